@@ -0,0 +1,362 @@
+package main
+
+import (
+	"bytes"
+	"compress/gzip"
+	"container/list"
+	"crypto/sha256"
+	"encoding/base64"
+	"encoding/binary"
+	"errors"
+	"io"
+	"math"
+	"sync"
+
+	"github.com/cespare/xxhash"
+)
+
+// Layout of filters that can be probed by the service, see BloomFilter.java
+const layoutBitSet = -3
+
+var errUnsupportedLayout = errors.New("unsupported filter layout")
+var errFilterNotFound = errors.New("filter not found")
+var errIncompatibleFilters = errors.New("only bloom filters with the same parameters can be merged")
+var errBaseMismatch = errors.New("stored filter is not the base of the delta")
+var errInvalidDelta = errors.New("invalid delta")
+
+// Decoded bitset of a persisted filter, probed exactly like BloomFilterBitSet.java
+type BitSetFilter struct {
+	hashes int32
+	bits   int64
+	words  []uint64
+	size   int
+}
+
+func (f *BitSetFilter) MightContain(key []byte) bool {
+	hash := xxhash.Sum64(key)
+	for i := int32(1); i <= f.hashes; i++ {
+		bit := f.position(hash, i)
+		if f.words[bit>>6]&(1<<uint(bit&63)) == 0 {
+			return false
+		}
+	}
+	return true
+}
+
+// Position of the i-th (from 1) bit of the hash, same as BloomFilterBitSet.position
+func (f *BitSetFilter) position(hash uint64, i int32) int64 {
+	if f.bits > math.MaxInt32 {
+		combined := hash + uint64(i)*wideHash(hash)
+		return int64((combined & math.MaxInt64) % uint64(f.bits))
+	}
+	combined := int32(hash) + i*int32(hash>>32)
+	if combined < 0 {
+		combined = ^combined
+	}
+	return int64(combined % int32(f.bits))
+}
+
+// Second hash for 64 bit positions (Murmur3 finalizer), odd so every step moves
+func wideHash(hash uint64) uint64 {
+	hash ^= hash >> 33
+	hash *= 0xFF51AFD7ED558CCD
+	hash ^= hash >> 33
+	hash *= 0xC4CEB9FE1A85EC53
+	hash ^= hash >> 33
+	return hash | 1
+}
+
+// Parameters and bitsets of a LAYOUT_BITSET filter
+type BitSetLayout struct {
+	hash               []byte
+	expectedInsertions int64
+	falsePositive      float64
+	pre                *BitSetFilter
+	main               *BitSetFilter
+}
+
+// Decodes a Base64 serialized filter, only the main bitset of LAYOUT_BITSET is kept
+func decodeBitSetFilter(value []byte) (*BitSetFilter, error) {
+	layout, err := decodeBitSetLayout(value)
+	if err != nil {
+		return nil, err
+	}
+	f := layout.main
+	f.size = len(value)
+	return f, nil
+}
+
+// <hash>:<layout>:<expectedInsertions>:<falsePositivePercentage>:<bitset_pre>:<bitset>
+func decodeBitSetLayout(value []byte) (*BitSetLayout, error) {
+	serialized := make([]byte, base64.StdEncoding.DecodedLen(len(value)))
+	n, err := base64.StdEncoding.Decode(serialized, value)
+	if err != nil {
+		return nil, err
+	}
+	if n < 36 {
+		return nil, errors.New("truncated filter")
+	}
+	r := bytes.NewReader(serialized[32:n])
+	var layout int32
+	if err := binary.Read(r, binary.LittleEndian, &layout); err != nil {
+		return nil, err
+	}
+	if layout != layoutBitSet {
+		return nil, errUnsupportedLayout
+	}
+	l := &BitSetLayout{hash: serialized[:32]}
+	var expectedInsertions int32
+	if err := binary.Read(r, binary.LittleEndian, &expectedInsertions); err != nil {
+		return nil, err
+	}
+	l.expectedInsertions = int64(expectedInsertions)
+	// Expected insertions beyond an int are written as -1 followed by a long
+	if expectedInsertions < 0 {
+		if err := binary.Read(r, binary.LittleEndian, &l.expectedInsertions); err != nil {
+			return nil, err
+		}
+	}
+	if err := binary.Read(r, binary.LittleEndian, &l.falsePositive); err != nil {
+		return nil, err
+	}
+	if l.pre, err = readBitSet(r); err != nil {
+		return nil, err
+	}
+	if l.main, err = readBitSet(r); err != nil {
+		return nil, err
+	}
+	return l, nil
+}
+
+// Serialized like BloomFilter.java does, the hash covers everything after the layout unless the
+// layout holds the hash the client computed for the same content
+func (l *BitSetLayout) encode() ([]byte, error) {
+	var payload bytes.Buffer
+	if l.expectedInsertions <= math.MaxInt32 {
+		binary.Write(&payload, binary.LittleEndian, int32(l.expectedInsertions))
+	} else {
+		binary.Write(&payload, binary.LittleEndian, int32(-1))
+		binary.Write(&payload, binary.LittleEndian, l.expectedInsertions)
+	}
+	binary.Write(&payload, binary.LittleEndian, l.falsePositive)
+	if err := writeBitSet(&payload, l.pre); err != nil {
+		return nil, err
+	}
+	if err := writeBitSet(&payload, l.main); err != nil {
+		return nil, err
+	}
+
+	var serialized bytes.Buffer
+	if l.hash != nil {
+		serialized.Write(l.hash)
+	} else {
+		hash := sha256.Sum256(payload.Bytes())
+		serialized.Write(hash[:])
+	}
+	binary.Write(&serialized, binary.LittleEndian, int32(layoutBitSet))
+	serialized.Write(payload.Bytes())
+
+	value := make([]byte, base64.StdEncoding.EncodedLen(serialized.Len()))
+	base64.StdEncoding.Encode(value, serialized.Bytes())
+	return value, nil
+}
+
+// <hashes>:<bits>:<size>:<gzip compressed little endian words>, bitsets beyond an int write the
+// negated amount of words as bits
+func readBitSet(r *bytes.Reader) (*BitSetFilter, error) {
+	var header [3]int32
+	if err := binary.Read(r, binary.LittleEndian, &header); err != nil {
+		return nil, err
+	}
+	bits := int64(header[1])
+	if bits < 0 {
+		bits = -bits << 6
+	}
+	if header[0] <= 0 || bits == 0 || bits%64 != 0 || header[2] < 0 || int(header[2]) > r.Len() {
+		return nil, errors.New("invalid bitset")
+	}
+	compressed := make([]byte, header[2])
+	if _, err := io.ReadFull(r, compressed); err != nil {
+		return nil, err
+	}
+	gz, err := gzip.NewReader(bytes.NewReader(compressed))
+	if err != nil {
+		return nil, err
+	}
+	words := make([]uint64, bits>>6)
+	if err := binary.Read(gz, binary.LittleEndian, words); err != nil {
+		return nil, err
+	}
+	return &BitSetFilter{hashes: header[0], bits: bits, words: words}, nil
+}
+
+func writeBitSet(w *bytes.Buffer, f *BitSetFilter) error {
+	var compressed bytes.Buffer
+	gz := gzip.NewWriter(&compressed)
+	if err := binary.Write(gz, binary.LittleEndian, f.words); err != nil {
+		return err
+	}
+	if err := gz.Close(); err != nil {
+		return err
+	}
+	bits := int32(f.bits)
+	if f.bits > math.MaxInt32 {
+		bits = -int32(len(f.words))
+	}
+	binary.Write(w, binary.LittleEndian, [3]int32{f.hashes, bits, int32(compressed.Len())})
+	w.Write(compressed.Bytes())
+	return nil
+}
+
+// Merges two Base64 serialized filters with the same parameters into one that contains the keys of both
+func mergeFilters(stored []byte, value []byte) ([]byte, error) {
+	if len(stored) == 0 {
+		return value, nil
+	}
+	a, err := decodeBitSetLayout(stored)
+	if err != nil {
+		return nil, err
+	}
+	b, err := decodeBitSetLayout(value)
+	if err != nil {
+		return nil, err
+	}
+	if a.expectedInsertions != b.expectedInsertions || a.falsePositive != b.falsePositive ||
+		!a.pre.isCompatible(b.pre) || !a.main.isCompatible(b.main) {
+		return nil, errIncompatibleFilters
+	}
+	a.pre.or(b.pre)
+	a.main.or(b.main)
+	a.hash = nil
+	return a.encode()
+}
+
+// Applies the changed words sent by BloomFilterDelta.java to the stored filter, which has to be the base
+// version of the delta. The result keeps the hash of the client's version, as its content is the same.
+func applyDelta(stored []byte, delta []byte, base []byte, hash []byte) ([]byte, error) {
+	if len(stored) == 0 {
+		return nil, errFilterNotFound
+	}
+	l, err := decodeBitSetLayout(stored)
+	if err != nil {
+		return nil, err
+	}
+	if !bytes.Equal(l.hash, base) {
+		return nil, errBaseMismatch
+	}
+	r := bytes.NewReader(delta)
+	for _, f := range []*BitSetFilter{l.pre, l.main} {
+		var count int32
+		if err := binary.Read(r, binary.LittleEndian, &count); err != nil {
+			return nil, errInvalidDelta
+		}
+		for i := int32(0); i < count; i++ {
+			var index int32
+			var xor uint64
+			if binary.Read(r, binary.LittleEndian, &index) != nil || binary.Read(r, binary.LittleEndian, &xor) != nil {
+				return nil, errInvalidDelta
+			}
+			if index < 0 || int(index) >= len(f.words) {
+				return nil, errInvalidDelta
+			}
+			f.words[index] ^= xor
+		}
+	}
+	if r.Len() > 0 {
+		return nil, errInvalidDelta
+	}
+	l.hash = hash
+	return l.encode()
+}
+
+func (f *BitSetFilter) isCompatible(other *BitSetFilter) bool {
+	return f.hashes == other.hashes && f.bits == other.bits
+}
+
+func (f *BitSetFilter) or(other *BitSetFilter) {
+	for i, word := range other.words {
+		f.words[i] |= word
+	}
+}
+
+// Hot filters kept decoded in memory for membership requests, the least recently used filters are
+// evicted once the cache holds more than maxBytes of words
+type FilterCache struct {
+	mutex    sync.Mutex
+	backend  IBackend
+	maxBytes int
+	bytes    int
+	entries  map[string]*list.Element
+	lru      *list.List
+
+	// Bumped on every write, so a filter read before a write is not cached after it
+	generation uint64
+}
+
+type filterCacheEntry struct {
+	key    string
+	filter *BitSetFilter
+}
+
+func (c *FilterCache) Get(key string) (*BitSetFilter, error) {
+	c.mutex.Lock()
+	if e, ok := c.entries[key]; ok {
+		c.lru.MoveToFront(e)
+		c.mutex.Unlock()
+		return e.Value.(*filterCacheEntry).filter, nil
+	}
+	generation := c.generation
+	c.mutex.Unlock()
+
+	// Decode outside of the lock, concurrent loads of the same key are harmless
+	value, err := c.backend.Get([]byte(key))
+	if err != nil {
+		return nil, err
+	}
+	if len(value) == 0 {
+		return nil, errFilterNotFound
+	}
+	f, err := decodeBitSetFilter(value)
+	if err != nil {
+		return nil, err
+	}
+
+	c.mutex.Lock()
+	defer c.mutex.Unlock()
+	if generation != c.generation {
+		return f, nil
+	}
+	if _, ok := c.entries[key]; !ok {
+		c.entries[key] = c.lru.PushFront(&filterCacheEntry{key: key, filter: f})
+		c.bytes += len(f.words) * 8
+		for c.bytes > c.maxBytes && c.lru.Len() > 1 {
+			c.removeLocked(c.lru.Back())
+		}
+	}
+	return f, nil
+}
+
+// Invalidate, to be called when the key is written
+func (c *FilterCache) Invalidate(key string) {
+	c.mutex.Lock()
+	defer c.mutex.Unlock()
+	c.generation++
+	if e, ok := c.entries[key]; ok {
+		c.removeLocked(e)
+	}
+}
+
+func (c *FilterCache) removeLocked(e *list.Element) {
+	entry := c.lru.Remove(e).(*filterCacheEntry)
+	delete(c.entries, entry.key)
+	c.bytes -= len(entry.filter.words) * 8
+}
+
+func newFilterCache(backend IBackend, maxBytes int) *FilterCache {
+	return &FilterCache{
+		backend:  backend,
+		maxBytes: maxBytes,
+		entries:  make(map[string]*list.Element),
+		lru:      list.New(),
+	}
+}
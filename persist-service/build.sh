@@ -7,6 +7,7 @@ go get -v "github.com/qiangxue/fasthttp-routing"
 go get -v "github.com/valyala/fasthttp"
 go get -v "github.com/boltdb/bolt"
 go get -v "github.com/gocql/gocql"
+go get -v "github.com/cespare/xxhash"
 echo "Changing directory to $DIR"
 cd $DIR
 go build -v .
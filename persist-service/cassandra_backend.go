@@ -1,6 +1,7 @@
 package main
 
 import (
+	"errors"
 	"github.com/gocql/gocql"
 	"fmt"
 	"log"
@@ -24,12 +25,112 @@ func (b CassandraBackend) Put(k []byte, v []byte) (bool, error) {
 	return err == nil, err;
 }
 
+// Limits of a single unlogged batch, large batches put too much pressure on the coordinator and
+// are rejected beyond batch_size_fail_threshold_in_kb
+const cassandraBatchSize = 100
+const cassandraBatchBytes = 32 * 1024
+
+func (b CassandraBackend) PutBatch(keys [][]byte, values [][]byte) error {
+	stmt := fmt.Sprintf(`INSERT INTO %s (key, value) VALUES (?, ?)`, b.config.Table)
+	batch := b.session.NewBatch(gocql.UnloggedBatch)
+	batchBytes := 0
+	for i := range keys {
+		size := len(keys[i]) + len(values[i])
+
+		// Values that do not fit a batch, such as chunks, are written on their own
+		if size > cassandraBatchBytes {
+			if err := b.session.Query(stmt, keys[i], values[i]).Exec(); err != nil {
+				return err
+			}
+			continue
+		}
+		if batch.Size() == cassandraBatchSize || batchBytes+size > cassandraBatchBytes {
+			if err := b.session.ExecuteBatch(batch); err != nil {
+				return err
+			}
+			batch = b.session.NewBatch(gocql.UnloggedBatch)
+			batchBytes = 0
+		}
+		batch.Query(stmt, keys[i], values[i])
+		batchBytes += size
+	}
+	if batch.Size() > 0 {
+		return b.session.ExecuteBatch(batch)
+	}
+	return nil
+}
+
+func (b CassandraBackend) Delete(keys [][]byte) error {
+	stmt := fmt.Sprintf(`DELETE FROM %s WHERE key = ?`, b.config.Table)
+	batch := b.session.NewBatch(gocql.UnloggedBatch)
+	for _, k := range keys {
+		if batch.Size() == cassandraBatchSize {
+			if err := b.session.ExecuteBatch(batch); err != nil {
+				return err
+			}
+			batch = b.session.NewBatch(gocql.UnloggedBatch)
+		}
+		batch.Query(stmt, k)
+	}
+	if batch.Size() > 0 {
+		return b.session.ExecuteBatch(batch)
+	}
+	return nil
+}
+
+// Attempts of a merge before giving up on concurrent writers
+const cassandraMergeAttempts = 10
+
+func (b CassandraBackend) Merge(k []byte, v []byte, merge MergeFunc) error {
+	// Lightweight transactions on the previous value, retried when another writer got there first
+	for attempt := 0; attempt < cassandraMergeAttempts; attempt++ {
+		var stored []byte
+		err := b.session.Query(fmt.Sprintf(`SELECT value FROM %s WHERE key = ? LIMIT 1`, b.config.Table), k).Scan(&stored)
+		if err != nil && err != gocql.ErrNotFound {
+			return err
+		}
+		merged, err := merge(stored, v)
+		if err != nil {
+			return err
+		}
+		var q *gocql.Query
+		if stored != nil {
+			q = b.session.Query(fmt.Sprintf(`UPDATE %s SET value = ? WHERE key = ? IF value = ?`, b.config.Table), merged, k, stored)
+		} else {
+			q = b.session.Query(fmt.Sprintf(`INSERT INTO %s (key, value) VALUES (?, ?) IF NOT EXISTS`, b.config.Table), k, merged)
+		}
+		applied, err := q.MapScanCAS(make(map[string]interface{}))
+		if err != nil {
+			return err
+		}
+		if applied {
+			return nil
+		}
+	}
+	return errors.New("merge gave up after concurrent writes")
+}
+
 func (b CassandraBackend) Get(k []byte) ([]byte, error) {
 	var v []byte;
 	err := b.session.Query(fmt.Sprintf(`SELECT value FROM %s WHERE key = ? LIMIT 1`, b.config.Table), k).Scan(&v)
+	if err == gocql.ErrNotFound {
+		// Missing keys are empty like in the other backends, the chunked backend reads the manifest again
+		return nil, nil
+	}
 	return v, err
 }
 
+func (b CassandraBackend) Keys() ([][]byte, error) {
+	var keys [][]byte
+	var k []byte
+	iter := b.session.Query(fmt.Sprintf(`SELECT key FROM %s`, b.config.Table)).Iter()
+	for iter.Scan(&k) {
+		keys = append(keys, k)
+		k = nil
+	}
+	return keys, iter.Close()
+}
+
 func newCassandraBackend(conf *Conf) IBackend  {
 	// Connect to the cluster
 	cluster := gocql.NewCluster(conf.Cassandra.Hosts...)
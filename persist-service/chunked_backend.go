@@ -0,0 +1,291 @@
+package main
+
+import (
+	"bytes"
+	"crypto/rand"
+	"encoding/hex"
+	"errors"
+	"fmt"
+	"hash/fnv"
+	"log"
+	"strconv"
+	"strings"
+	"sync"
+)
+
+// Values larger than the chunk size are stored as chunks under "<key>\x00<generation>\x00<index>" and a
+// manifest "chunks:<count>:<size>:<chunkSize>:<generation>" under the key itself. Base64 never contains
+// ':', so a manifest can not be mistaken for a filter. The chunk size is a multiple of 4, so every chunk
+// holds whole Base64 quads.
+//
+// Every write of a chunked value uses a new generation, its chunks are written before the manifest and
+// the chunks of the previous manifest are deleted after it. Backends write batches without isolation, so
+// this way a reader only ever sees a manifest whose chunks are complete, or misses chunks that were
+// deleted and reads the manifest again. Manifests written before generations were added have none, their
+// chunks are under "<key>\x00<index>".
+type ChunkedBackend struct {
+	backend   IBackend
+	chunkSize int
+
+	// Writes of a key hold its lock, so concurrent writers of this service instance do not delete each
+	// other's chunks
+	locks [64]sync.Mutex
+}
+
+type Manifest struct {
+	count      int
+	size       int
+	chunkSize  int
+	generation string
+}
+
+var manifestPrefix = []byte("chunks:")
+
+var errChunkNotFound = errors.New("chunk not found")
+
+var errMergeChunked = errors.New("merged value is chunked")
+
+func chunkKey(k []byte, generation string, index int) []byte {
+	ck := make([]byte, 0, len(k)+len(generation)+8)
+	ck = append(ck, k...)
+	ck = append(ck, 0)
+	if generation != "" {
+		ck = append(ck, generation...)
+		ck = append(ck, 0)
+	}
+	return strconv.AppendInt(ck, int64(index), 10)
+}
+
+func parseManifest(v []byte) (Manifest, bool) {
+	var m Manifest
+	if !bytes.HasPrefix(v, manifestPrefix) {
+		return m, false
+	}
+	parts := strings.Split(string(v), ":")
+	if len(parts) != 4 && len(parts) != 5 {
+		return m, false
+	}
+	var countErr, sizeErr, chunkSizeErr error
+	m.count, countErr = strconv.Atoi(parts[1])
+	m.size, sizeErr = strconv.Atoi(parts[2])
+	m.chunkSize, chunkSizeErr = strconv.Atoi(parts[3])
+	if len(parts) == 5 {
+		m.generation = parts[4]
+	}
+	return m, countErr == nil && sizeErr == nil && chunkSizeErr == nil
+}
+
+func (m Manifest) chunkKeys(k []byte) [][]byte {
+	keys := make([][]byte, m.count)
+	for i := range keys {
+		keys[i] = chunkKey(k, m.generation, i)
+	}
+	return keys
+}
+
+func newGeneration() string {
+	var g [8]byte
+	rand.Read(g[:])
+	return hex.EncodeToString(g[:])
+}
+
+// Appends the chunks of the value to chunkKeys and chunkValues, and the value or its manifest to keys
+// and values
+func (b *ChunkedBackend) split(k []byte, v []byte, chunkKeys, chunkValues, keys, values [][]byte) ([][]byte, [][]byte, [][]byte, [][]byte) {
+	if len(v) <= b.chunkSize {
+		return chunkKeys, chunkValues, append(keys, k), append(values, v)
+	}
+	generation := newGeneration()
+	count := 0
+	for start := 0; start < len(v); start += b.chunkSize {
+		end := start + b.chunkSize
+		if end > len(v) {
+			end = len(v)
+		}
+		chunkKeys = append(chunkKeys, chunkKey(k, generation, count))
+		chunkValues = append(chunkValues, v[start:end])
+		count++
+	}
+	manifest := fmt.Sprintf("chunks:%d:%d:%d:%s", count, len(v), b.chunkSize, generation)
+	return chunkKeys, chunkValues, append(keys, k), append(values, []byte(manifest))
+}
+
+// Chunks of the stored values of the keys
+func (b *ChunkedBackend) storedChunks(keys [][]byte) [][]byte {
+	var chunks [][]byte
+	for _, k := range keys {
+		if v, err := b.backend.Get(k); err == nil {
+			if m, ok := parseManifest(v); ok {
+				chunks = append(chunks, m.chunkKeys(k)...)
+			}
+		}
+	}
+	return chunks
+}
+
+func (b *ChunkedBackend) lock(k []byte) *sync.Mutex {
+	h := fnv.New32a()
+	h.Write(k)
+	lock := &b.locks[h.Sum32()%uint32(len(b.locks))]
+	lock.Lock()
+	return lock
+}
+
+func (b *ChunkedBackend) Put(k []byte, v []byte) (bool, error) {
+	defer b.lock(k).Unlock()
+	err := b.put([][]byte{k}, [][]byte{v})
+	return err == nil, err
+}
+
+// Keys of a batch are not locked, a batch racing another write of one of its keys may leave the chunks
+// of one of them behind
+func (b *ChunkedBackend) PutBatch(keys [][]byte, values [][]byte) error {
+	return b.put(keys, values)
+}
+
+func (b *ChunkedBackend) put(keys [][]byte, values [][]byte) error {
+	replaced := b.storedChunks(keys)
+	var chunkKeys, chunkValues, valueKeys, valueValues [][]byte
+	for i := range keys {
+		chunkKeys, chunkValues, valueKeys, valueValues = b.split(keys[i], values[i], chunkKeys, chunkValues, valueKeys, valueValues)
+	}
+	if len(chunkKeys) > 0 {
+		if err := b.backend.PutBatch(chunkKeys, chunkValues); err != nil {
+			b.backend.Delete(chunkKeys)
+			return err
+		}
+	}
+	var err error
+	if len(valueKeys) == 1 {
+		_, err = b.backend.Put(valueKeys[0], valueValues[0])
+	} else {
+		err = b.backend.PutBatch(valueKeys, valueValues)
+	}
+	if err != nil {
+		// Some manifests may have been written, so the new chunks are left in place
+		return err
+	}
+	if len(replaced) > 0 {
+		if err := b.backend.Delete(replaced); err != nil {
+			log.Printf("DELETE %d replaced chunks %v", len(replaced), err)
+		}
+	}
+	return nil
+}
+
+// Merge is atomic in the backend for values that fit a single chunk. Chunked values are read and written
+// under a lock of this service instance, so their merges are only atomic when a single instance writes them.
+// A missing key merges into an empty value.
+func (b *ChunkedBackend) Merge(k []byte, v []byte, merge MergeFunc) error {
+	defer b.lock(k).Unlock()
+
+	stored, chunked, err := b.GetManifest(k)
+	if err != nil {
+		return err
+	}
+	if !chunked && len(stored) <= b.chunkSize && len(v) <= b.chunkSize {
+		// Merged values that do not fit a chunk, or a value chunked by another instance meanwhile, are
+		// merged again below
+		err = b.backend.Merge(k, v, func(stored []byte, value []byte) ([]byte, error) {
+			if _, ok := parseManifest(stored); ok {
+				return nil, errMergeChunked
+			}
+			merged, err := merge(stored, value)
+			if err == nil && len(merged) > b.chunkSize {
+				return nil, errMergeChunked
+			}
+			return merged, err
+		})
+		if err != errMergeChunked {
+			return err
+		}
+	}
+	stored, err = b.Get(k)
+	if err != nil {
+		return err
+	}
+	merged, err := merge(stored, v)
+	if err != nil {
+		return err
+	}
+	return b.put([][]byte{k}, [][]byte{merged})
+}
+
+// Get, the whole value which is assembled from its chunks if needed. Chunks are missing when the value
+// was written again while reading it, then the new manifest is read once more.
+func (b *ChunkedBackend) Get(k []byte) ([]byte, error) {
+	for attempt := 0; ; attempt++ {
+		v, err := b.backend.Get(k)
+		if err != nil {
+			return nil, err
+		}
+		m, ok := parseManifest(v)
+		if !ok {
+			return v, nil
+		}
+		res, err := b.assemble(k, m)
+		if err != errChunkNotFound || attempt == 1 {
+			return res, err
+		}
+	}
+}
+
+func (b *ChunkedBackend) assemble(k []byte, m Manifest) ([]byte, error) {
+	res := make([]byte, 0, m.size)
+	for i := 0; i < m.count; i++ {
+		chunk, err := b.backend.Get(chunkKey(k, m.generation, i))
+		if err != nil {
+			return nil, err
+		}
+		if chunk == nil {
+			return nil, errChunkNotFound
+		}
+		res = append(res, chunk...)
+	}
+	if len(res) != m.size {
+		return nil, errors.New("chunks do not match their manifest")
+	}
+	return res, nil
+}
+
+// GetManifest, the manifest of a chunked value or the value itself
+func (b *ChunkedBackend) GetManifest(k []byte) ([]byte, bool, error) {
+	v, err := b.backend.Get(k)
+	if err != nil {
+		return nil, false, err
+	}
+	_, ok := parseManifest(v)
+	return v, ok, nil
+}
+
+func (b *ChunkedBackend) GetChunk(k []byte, generation string, index int) ([]byte, error) {
+	chunk, err := b.backend.Get(chunkKey(k, generation, index))
+	if err == nil && chunk == nil {
+		return nil, errChunkNotFound
+	}
+	return chunk, err
+}
+
+// Keys, without the chunks
+func (b *ChunkedBackend) Keys() ([][]byte, error) {
+	keys, err := b.backend.Keys()
+	filtered := keys[:0]
+	for _, k := range keys {
+		if bytes.IndexByte(k, 0) < 0 {
+			filtered = append(filtered, k)
+		}
+	}
+	return filtered, err
+}
+
+func newChunkedBackend(backend IBackend, chunkSize int) *ChunkedBackend {
+	// Whole Base64 quads only
+	chunkSize &^= 3
+	if chunkSize < 4 {
+		chunkSize = defaultChunkSize
+	}
+	return &ChunkedBackend{
+		backend:   backend,
+		chunkSize: chunkSize,
+	}
+}
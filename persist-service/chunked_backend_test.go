@@ -0,0 +1,147 @@
+package main
+
+import (
+	"bytes"
+	"sync"
+	"testing"
+)
+
+// In memory backend with the semantics every backend has to provide, beforeGet is called before each read
+type memoryBackend struct {
+	mutex     sync.Mutex
+	values    map[string][]byte
+	beforeGet func(k []byte)
+}
+
+func newMemoryBackend() *memoryBackend {
+	return &memoryBackend{values: make(map[string][]byte)}
+}
+
+func (b *memoryBackend) Put(k []byte, v []byte) (bool, error) {
+	b.mutex.Lock()
+	defer b.mutex.Unlock()
+	b.values[string(k)] = append([]byte(nil), v...)
+	return true, nil
+}
+
+func (b *memoryBackend) PutBatch(keys [][]byte, values [][]byte) error {
+	for i := range keys {
+		b.Put(keys[i], values[i])
+	}
+	return nil
+}
+
+func (b *memoryBackend) Merge(k []byte, v []byte, merge MergeFunc) error {
+	b.mutex.Lock()
+	defer b.mutex.Unlock()
+	merged, err := merge(b.values[string(k)], v)
+	if err != nil {
+		return err
+	}
+	b.values[string(k)] = merged
+	return nil
+}
+
+func (b *memoryBackend) Get(k []byte) ([]byte, error) {
+	if b.beforeGet != nil {
+		b.beforeGet(k)
+	}
+	b.mutex.Lock()
+	defer b.mutex.Unlock()
+	return b.values[string(k)], nil
+}
+
+func (b *memoryBackend) Delete(keys [][]byte) error {
+	b.mutex.Lock()
+	defer b.mutex.Unlock()
+	for _, k := range keys {
+		delete(b.values, string(k))
+	}
+	return nil
+}
+
+func (b *memoryBackend) Keys() ([][]byte, error) {
+	b.mutex.Lock()
+	defer b.mutex.Unlock()
+	var keys [][]byte
+	for k := range b.values {
+		keys = append(keys, []byte(k))
+	}
+	return keys, nil
+}
+
+func TestGetMissingKey(t *testing.T) {
+	chunked := newChunkedBackend(newMemoryBackend(), 8)
+	v, err := chunked.Get([]byte("missing"))
+	if v != nil || err != nil {
+		t.Fatalf("Get of a missing key returned %q, %v", v, err)
+	}
+}
+
+func TestGetRewrittenWhileAssembling(t *testing.T) {
+	memory := newMemoryBackend()
+	chunked := newChunkedBackend(memory, 8)
+	k := []byte("key1")
+	if _, err := chunked.Put(k, []byte("AAAABBBBCCCCDDDD")); err != nil {
+		t.Fatal(err)
+	}
+
+	// The value is written again after its manifest was read, which deletes the chunks being assembled
+	rewritten := false
+	memory.beforeGet = func(ck []byte) {
+		if !rewritten && bytes.IndexByte(ck, 0) >= 0 {
+			rewritten = true
+			if _, err := chunked.Put(k, []byte("EEEEFFFFGGGGHHHHIIII")); err != nil {
+				t.Fatal(err)
+			}
+		}
+	}
+	v, err := chunked.Get(k)
+	if err != nil {
+		t.Fatal(err)
+	}
+	if !rewritten || string(v) != "EEEEFFFFGGGGHHHHIIII" {
+		t.Fatalf("Get returned %q after the value was written again", v)
+	}
+}
+
+func concat(stored []byte, value []byte) ([]byte, error) {
+	return append(append([]byte(nil), stored...), value...), nil
+}
+
+func TestMergeMissingKey(t *testing.T) {
+	memory := newMemoryBackend()
+	chunked := newChunkedBackend(memory, 8)
+	if err := chunked.Merge([]byte("small"), []byte("AAAA"), concat); err != nil {
+		t.Fatal(err)
+	}
+	if err := chunked.Merge([]byte("large"), []byte("AAAABBBBCCCC"), concat); err != nil {
+		t.Fatal(err)
+	}
+	if v, _ := chunked.Get([]byte("small")); string(v) != "AAAA" {
+		t.Fatalf("Merge into a missing key stored %q", v)
+	}
+	if v, _ := chunked.Get([]byte("large")); string(v) != "AAAABBBBCCCC" {
+		t.Fatalf("Merge into a missing key stored %q", v)
+	}
+}
+
+func TestMergeGrowsIntoChunks(t *testing.T) {
+	memory := newMemoryBackend()
+	chunked := newChunkedBackend(memory, 8)
+	k := []byte("key1")
+	if _, err := chunked.Put(k, []byte("AAAABBBB")); err != nil {
+		t.Fatal(err)
+	}
+
+	// Both values fit a chunk, the merged one does not
+	if err := chunked.Merge(k, []byte("CCCC"), concat); err != nil {
+		t.Fatal(err)
+	}
+	if _, ok := parseManifest(memory.values["key1"]); !ok {
+		t.Fatalf("Merged value of 12 bytes was stored as %q", memory.values["key1"])
+	}
+	if v, _ := chunked.Get(k); string(v) != "AAAABBBBCCCC" {
+		t.Fatalf("Merge stored %q", v)
+	}
+}
@@ -11,13 +11,28 @@ type Conf struct {
 	Backend BackendType
 	ListenHost string
 	ListenPort int
+	ChunkSize int
+	FilterCacheSize int
+	File FileConf
 	Cassandra CassandraConf
 }
 
+// Values are stored in chunks of at most this many bytes
+const defaultChunkSize = 1024 * 1024
+
+// Filters are kept decoded in memory for membership requests up to this many bytes
+const defaultFilterCacheSize = 1024 * 1024 * 1024
+
 func newConf(path string) *Conf {
 	c := &Conf{
 		Backend: BackendFile,
 		ListenPort: 8081, // default port
+		ChunkSize: defaultChunkSize,
+		FilterCacheSize: defaultFilterCacheSize,
+		File: FileConf{
+			Path: "my.db",
+			CacheSize: 256 * 1024 * 1024,
+		},
 	}
 	configBytes, configErr := ioutil.ReadFile(path)
 	if configErr != nil {
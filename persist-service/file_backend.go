@@ -1,79 +1,152 @@
 package main
 
 import (
-	"fmt"
 	"github.com/boltdb/bolt"
 	"log"
-	"sync"
 )
 
+type FileConf struct {
+	Path      string
+	CacheSize int
+}
+
 type FileBackend struct {
 	db     *bolt.DB
 	bucket []byte
+	cache  *ValueCache
 }
 
 func (b FileBackend) Put(k []byte, v []byte) (bool, error) {
-	// Wait group
-	var wg sync.WaitGroup
-	wg.Add(1)
-
-	// Start
-	var err error = nil
-	b.db.Update(func(tx *bolt.Tx) error {
-		bu := tx.Bucket(b.bucket)
-		err = bu.Put(k, v)
-		wg.Done()
-		return err
+	// Concurrent puts are committed together
+	err := b.db.Batch(func(tx *bolt.Tx) error {
+		return tx.Bucket(b.bucket).Put(k, v)
 	})
+	b.cache.Invalidate(k)
+	return err == nil, err
+}
 
-	// Wait
-	wg.Wait()
+// Amount of keys written per bolt transaction
+const fileBatchSize = 1000
 
-	return err == nil, err
+func (b FileBackend) PutBatch(keys [][]byte, values [][]byte) error {
+	for start := 0; start < len(keys); start += fileBatchSize {
+		end := start + fileBatchSize
+		if end > len(keys) {
+			end = len(keys)
+		}
+		err := b.db.Update(func(tx *bolt.Tx) error {
+			bu := tx.Bucket(b.bucket)
+			for i := start; i < end; i++ {
+				if err := bu.Put(keys[i], values[i]); err != nil {
+					return err
+				}
+			}
+			return nil
+		})
+		for i := start; i < end; i++ {
+			b.cache.Invalidate(keys[i])
+		}
+		if err != nil {
+			return err
+		}
+	}
+	return nil
 }
 
-func (b FileBackend) Get(k []byte) ([]byte, error) {
-	// Wait group
-	var wg sync.WaitGroup
-	wg.Add(1)
+func (b FileBackend) Delete(keys [][]byte) error {
+	for start := 0; start < len(keys); start += fileBatchSize {
+		end := start + fileBatchSize
+		if end > len(keys) {
+			end = len(keys)
+		}
+		err := b.db.Update(func(tx *bolt.Tx) error {
+			bu := tx.Bucket(b.bucket)
+			for i := start; i < end; i++ {
+				if err := bu.Delete(keys[i]); err != nil {
+					return err
+				}
+			}
+			return nil
+		})
+		for i := start; i < end; i++ {
+			b.cache.Invalidate(keys[i])
+		}
+		if err != nil {
+			return err
+		}
+	}
+	return nil
+}
 
-	// Start
-	var err error = nil
-	var by []byte = nil
-	b.db.View(func(tx *bolt.Tx) error {
-		b := tx.Bucket(b.bucket)
-		v := b.Get(k)
-		by = v
-		wg.Done()
-		return nil
+func (b FileBackend) Merge(k []byte, v []byte, merge MergeFunc) error {
+	// Bolt has a single writer, so the read and the write are atomic
+	err := b.db.Update(func(tx *bolt.Tx) error {
+		bu := tx.Bucket(b.bucket)
+		merged, err := merge(bu.Get(k), v)
+		if err != nil {
+			return err
+		}
+		return bu.Put(k, merged)
 	})
+	b.cache.Invalidate(k)
+	return err
+}
 
-	// Wait
-	wg.Wait()
+// Get, hot values are served from the cache. Others are copied once out of the mmap'd page, which is
+// only valid during the transaction.
+func (b FileBackend) Get(k []byte) ([]byte, error) {
+	v, generation := b.cache.Get(k)
+	if v != nil {
+		return v, nil
+	}
+	err := b.db.View(func(tx *bolt.Tx) error {
+		if stored := tx.Bucket(b.bucket).Get(k); stored != nil {
+			v = append([]byte(nil), stored...)
+		}
+		return nil
+	})
+	if err != nil {
+		return nil, err
+	}
+	if v != nil {
+		b.cache.Add(k, v, generation)
+	}
+	return v, nil
+}
 
-	return by, err
+func (b FileBackend) Keys() ([][]byte, error) {
+	var keys [][]byte
+	err := b.db.View(func(tx *bolt.Tx) error {
+		return tx.Bucket(b.bucket).ForEach(func(k, v []byte) error {
+			// Keys are only valid during the transaction
+			keys = append(keys, append([]byte(nil), k...))
+			return nil
+		})
+	})
+	return keys, err
 }
 
 func newFileBackend(conf *Conf) IBackend {
 	b := FileBackend{
 		bucket: []byte("store"),
+		cache:  newValueCache(conf.File.CacheSize),
 	}
 
 	// Open db
-	db, err := bolt.Open("my.db", 0600, nil)
+	db, err := bolt.Open(conf.File.Path, 0600, nil)
 	if err != nil {
 		log.Fatal(err)
 	}
 	b.db = db
 
 	// Db bucket
-	b.db.Update(func(tx *bolt.Tx) error {
-		_, err := tx.CreateBucket(b.bucket)
-		if err != nil {
-			return fmt.Errorf("create bucket: %s", err)
-		}
-		return nil
+	err = b.db.Update(func(tx *bolt.Tx) error {
+		_, err := tx.CreateBucketIfNotExists(b.bucket)
+		return err
 	})
+	if err != nil {
+		log.Fatalf("create bucket: %s", err)
+	}
 
 	return b
 }
@@ -7,12 +7,26 @@ const (
 	BackendCassandra = "cassandra"
 )
 
+type MergeFunc func(stored []byte, value []byte) ([]byte, error)
+
 type IBackend interface {
 	// Put, key => value
 	Put([]byte, []byte) (bool, error)
 
-	// Get, key
+	// PutBatch, keys[i] => values[i], written in as few transactions as possible
+	PutBatch([][]byte, [][]byte) error
+
+	// Merge, key => merge(stored, value) atomically, stored is empty if the key does not exist
+	Merge([]byte, []byte, MergeFunc) error
+
+	// Get, key, nil without an error if the key does not exist
 	Get([]byte) ([]byte, error)
+
+	// Delete, keys that do not exist are ignored
+	Delete([][]byte) error
+
+	// Keys, all stored keys
+	Keys() ([][]byte, error)
 }
 
 func newBackend(conf *Conf) IBackend {
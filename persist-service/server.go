@@ -1,8 +1,14 @@
 package main
 
 import (
+	"crypto/sha256"
+	"encoding/binary"
+	"encoding/hex"
+	"errors"
 	"fmt"
 	"log"
+	"strconv"
+	"strings"
 
 	"github.com/qiangxue/fasthttp-routing"
 	"github.com/valyala/fasthttp"
@@ -12,44 +18,213 @@ type Server struct {
 	requestHandler func(ctx *fasthttp.RequestCtx)
 	conf           *Conf
 	router         *routing.Router
-	backend        IBackend
+	backend        *ChunkedBackend
+	filters        *FilterCache
 }
 
 // Init
 func (s *Server) init() {
 	// Backend
-	s.backend = newBackend(s.conf)
-	if s.backend == nil {
+	backend := newBackend(s.conf)
+	if backend == nil {
 		log.Fatal("Backend not initiated")
 	}
+	s.backend = newChunkedBackend(backend, s.conf.ChunkSize)
+	s.filters = newFilterCache(s.backend, s.conf.FilterCacheSize)
 
 	// Router
 	s.router = routing.New()
 
-	// Upsert operation that writes data
+	// Upsert operation that writes data, with mode=merge the value is OR-ed into the stored filter and
+	// with mode=delta the body holds the changed words against the stored version with hash base
 	s.router.Put("/bloomfilter/<key>", func(c *routing.Context) error {
 		// Params
 		key := c.Param("key")
 		body := c.PostBody()
 
-		// Put
+		mode := string(c.QueryArgs().Peek("mode"))
+		if mode == "merge" || mode == "delta" {
+			merge := mergeFilters
+			if mode == "delta" {
+				base, baseErr := hex.DecodeString(string(c.QueryArgs().Peek("base")))
+				hash, hashErr := hex.DecodeString(string(c.QueryArgs().Peek("hash")))
+				if baseErr != nil || hashErr != nil || len(base) != sha256.Size || len(hash) != sha256.Size {
+					c.Error("invalid base or hash", fasthttp.StatusBadRequest)
+					return nil
+				}
+				merge = func(stored []byte, delta []byte) ([]byte, error) {
+					return applyDelta(stored, delta, base, hash)
+				}
+			}
+
+			// Merge
+			mergeErr := s.backend.Merge([]byte(key), body, merge)
+			s.filters.Invalidate(key)
+			switch mergeErr {
+			case nil:
+			case errFilterNotFound:
+				c.Error(mergeErr.Error(), fasthttp.StatusNotFound)
+			case errInvalidDelta:
+				c.Error(mergeErr.Error(), fasthttp.StatusBadRequest)
+			case errIncompatibleFilters:
+				c.Error(mergeErr.Error(), fasthttp.StatusConflict)
+			case errBaseMismatch:
+				c.Error(mergeErr.Error(), fasthttp.StatusPreconditionFailed)
+			case errUnsupportedLayout:
+				c.Error(mergeErr.Error(), fasthttp.StatusUnsupportedMediaType)
+			default:
+				c.Error(mergeErr.Error(), fasthttp.StatusInternalServerError)
+			}
+
+			// Log
+			log.Printf("%s %v %d %v", strings.ToUpper(mode), key, len(body), mergeErr)
+			return nil
+		}
+
+		// Put, only acknowledged once the backend stored it so clients retry failed writes
 		res, resErr := s.backend.Put([]byte(key), body)
+		if resErr != nil {
+			c.Error(resErr.Error(), fasthttp.StatusInternalServerError)
+		} else {
+			s.filters.Invalidate(key)
+		}
 
 		// Log
 		log.Printf("PUT %v %d %v %v", key, len(body), res, resErr)
 		return nil
 	})
 
-	// Get
+	// Multi-key upsert, the body is a sequence of <key_size><key><value_size><value> frames
+	// with little endian int sizes
+	s.router.Put("/bloomfilter", func(c *routing.Context) error {
+		keys, values, parseErr := parseFrames(c.PostBody())
+		if parseErr != nil {
+			log.Printf("PUT batch %v", parseErr)
+			c.Error(parseErr.Error(), fasthttp.StatusBadRequest)
+			return nil
+		}
+
+		// Put
+		putErr := s.backend.PutBatch(keys, values)
+		for _, key := range keys {
+			s.filters.Invalidate(string(key))
+		}
+		if putErr != nil {
+			c.Error(putErr.Error(), fasthttp.StatusInternalServerError)
+		}
+
+		// Log
+		log.Printf("PUT batch %d %v", len(keys), putErr)
+		return nil
+	})
+
+	// List keys, one per line
+	s.router.Get("/bloomfilter", func(c *routing.Context) error {
+		// Keys, a partial listing is not returned as clients would miss filters
+		keys, keysErr := s.backend.Keys()
+
+		// Output
+		if keysErr != nil {
+			c.Error(keysErr.Error(), fasthttp.StatusInternalServerError)
+		} else {
+			for _, key := range keys {
+				c.Write(key)
+				c.Write([]byte("\n"))
+			}
+		}
+
+		// Log
+		log.Printf("LIST %d %v", len(keys), keysErr)
+		return nil
+	})
+
+	// Membership of many keys, the body holds <key_size><key> frames with little endian int sizes and
+	// the response one byte per key, 1 if the filter might contain it. The size of the stored filter is
+	// returned in a header so clients can decide to download it instead.
+	s.router.Post("/bloomfilter/<key>/contains", func(c *routing.Context) error {
+		// Params
+		key := c.Param("key")
+		probes, parseErr := parseKeys(c.PostBody())
+		if parseErr != nil {
+			c.Error(parseErr.Error(), fasthttp.StatusBadRequest)
+			return nil
+		}
+
+		// Filter
+		f, filterErr := s.filters.Get(key)
+		if filterErr == errFilterNotFound {
+			c.Error(filterErr.Error(), fasthttp.StatusNotFound)
+			return nil
+		} else if filterErr == errUnsupportedLayout {
+			c.Error(filterErr.Error(), fasthttp.StatusUnsupportedMediaType)
+			return nil
+		} else if filterErr != nil {
+			c.Error(filterErr.Error(), fasthttp.StatusInternalServerError)
+			return nil
+		}
+
+		// Output
+		res := make([]byte, len(probes))
+		for i, probe := range probes {
+			if f.MightContain(probe) {
+				res[i] = 1
+			}
+		}
+		c.Response.Header.Set(sizeHeader, strconv.Itoa(f.size))
+		c.Write(res)
+
+		// Log
+		log.Printf("CONTAINS %v %d", key, len(probes))
+		return nil
+	})
+
+	// Get a single chunk of a chunked value, of the generation in its manifest
+	s.router.Get("/bloomfilter/<key>/chunk/<index>", func(c *routing.Context) error {
+		// Params
+		key := c.Param("key")
+		generation := string(c.QueryArgs().Peek("generation"))
+		index, indexErr := strconv.Atoi(c.Param("index"))
+		if indexErr != nil {
+			c.Error(indexErr.Error(), fasthttp.StatusBadRequest)
+			return nil
+		}
+
+		// Get, chunks of a replaced value are gone
+		res, resErr := s.backend.GetChunk([]byte(key), generation, index)
+		if resErr == errChunkNotFound {
+			c.Error(resErr.Error(), fasthttp.StatusNotFound)
+		} else if resErr != nil {
+			c.Error(resErr.Error(), fasthttp.StatusInternalServerError)
+		} else {
+			c.Response.SetBodyRaw(res)
+		}
+
+		// Log
+		log.Printf("GET %v chunk %d %d %v", key, index, len(res), resErr)
+		return nil
+	})
+
+	// Get, clients that send the chunks header receive the manifest of a chunked value
+	// and fetch the chunks themselves
 	s.router.Get("/bloomfilter/<key>", func(c *routing.Context) error {
 		// Params
 		key := c.Param("key")
 
 		// Get
-		res, resErr := s.backend.Get([]byte(key))
+		var res []byte
+		var resErr error
+		if len(c.Request.Header.Peek(chunksHeader)) > 0 {
+			var chunked bool
+			res, chunked, resErr = s.backend.GetManifest([]byte(key))
+			if chunked {
+				c.Response.Header.Set(chunksHeader, "manifest")
+			}
+		} else {
+			res, resErr = s.backend.Get([]byte(key))
+		}
 
-		// Output
-		fmt.Fprintf(c, "%s", res)
+		// Output, values are not modified after they are read so they can be sent as they are
+		c.Response.SetBodyRaw(res)
 
 		// Log
 		log.Printf("GET %v %d %v", key, len(res), resErr)
@@ -57,6 +232,57 @@ func (s *Server) init() {
 	})
 }
 
+// Header that marks manifest requests and responses
+const chunksHeader = "X-Bloomfilter-Chunks"
+
+// Header holding the size of the stored filter in membership responses
+const sizeHeader = "X-Bloomfilter-Size"
+
+// Splits a multi-key request body into keys and values, these point into the body
+func parseFrames(body []byte) ([][]byte, [][]byte, error) {
+	var keys, values [][]byte
+	for len(body) > 0 {
+		key, rest, err := readFrame(body)
+		if err != nil {
+			return nil, nil, err
+		}
+		value, rest, err := readFrame(rest)
+		if err != nil {
+			return nil, nil, err
+		}
+		keys = append(keys, key)
+		values = append(values, value)
+		body = rest
+	}
+	return keys, values, nil
+}
+
+// Splits a membership request body into keys, these point into the body
+func parseKeys(body []byte) ([][]byte, error) {
+	var keys [][]byte
+	for len(body) > 0 {
+		key, rest, err := readFrame(body)
+		if err != nil {
+			return nil, err
+		}
+		keys = append(keys, key)
+		body = rest
+	}
+	return keys, nil
+}
+
+func readFrame(body []byte) ([]byte, []byte, error) {
+	if len(body) < 4 {
+		return nil, nil, errors.New("truncated frame size")
+	}
+	size := binary.LittleEndian.Uint32(body)
+	body = body[4:]
+	if uint64(size) > uint64(len(body)) {
+		return nil, nil, errors.New("truncated frame")
+	}
+	return body[:size], body[size:], nil
+}
+
 // Start
 func (s *Server) Start() {
 	listenStr := fmt.Sprintf("%s:%d", s.conf.ListenHost, s.conf.ListenPort)
@@ -0,0 +1,78 @@
+package main
+
+import (
+	"container/list"
+	"sync"
+)
+
+// Least recently used values, bounded by their total size. Cached values are shared by all readers
+// and must not be modified.
+type ValueCache struct {
+	mutex    sync.Mutex
+	maxBytes int
+	bytes    int
+	entries  map[string]*list.Element
+	lru      *list.List
+
+	// Bumped on every write, so a value read before a write is not cached after it
+	generation uint64
+}
+
+type valueCacheEntry struct {
+	key   string
+	value []byte
+}
+
+func (c *ValueCache) Get(k []byte) ([]byte, uint64) {
+	c.mutex.Lock()
+	defer c.mutex.Unlock()
+	if e, ok := c.entries[string(k)]; ok {
+		c.lru.MoveToFront(e)
+		return e.Value.(*valueCacheEntry).value, c.generation
+	}
+	return nil, c.generation
+}
+
+// Add, only if nothing was written since generation was returned by Get
+func (c *ValueCache) Add(k []byte, v []byte, generation uint64) {
+	// Large values would evict everything else
+	if len(v) > c.maxBytes/8 {
+		return
+	}
+	c.mutex.Lock()
+	defer c.mutex.Unlock()
+	if generation != c.generation {
+		return
+	}
+	if _, ok := c.entries[string(k)]; ok {
+		return
+	}
+	c.entries[string(k)] = c.lru.PushFront(&valueCacheEntry{key: string(k), value: v})
+	c.bytes += len(v)
+	for c.bytes > c.maxBytes {
+		c.removeLocked(c.lru.Back())
+	}
+}
+
+func (c *ValueCache) Invalidate(k []byte) {
+	c.mutex.Lock()
+	defer c.mutex.Unlock()
+	c.generation++
+	if e, ok := c.entries[string(k)]; ok {
+		c.removeLocked(e)
+	}
+}
+
+func (c *ValueCache) removeLocked(e *list.Element) {
+	entry := c.lru.Remove(e).(*valueCacheEntry)
+	delete(c.entries, entry.key)
+	c.bytes -= len(entry.value)
+}
+
+func newValueCache(maxBytes int) *ValueCache {
+	return &ValueCache{
+		maxBytes: maxBytes,
+		entries:  make(map[string]*list.Element),
+		lru:      list.New(),
+	}
+}
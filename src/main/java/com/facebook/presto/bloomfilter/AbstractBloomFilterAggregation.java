@@ -15,6 +15,7 @@ package com.facebook.presto.bloomfilter;
 import com.facebook.presto.spi.block.BlockBuilder;
 import com.facebook.presto.spi.function.CombineFunction;
 import com.facebook.presto.spi.function.OutputFunction;
+import io.airlift.slice.Slice;
 
 public class AbstractBloomFilterAggregation
 {
@@ -22,7 +23,7 @@ public class AbstractBloomFilterAggregation
     {
     }
 
-    public static BloomFilter getOrCreateBloomFilter(BloomFilterState state, int expectedInsertions, double falsePositivePercentage)
+    public static BloomFilter getOrCreateBloomFilter(BloomFilterState state, long expectedInsertions, double falsePositivePercentage)
     {
         BloomFilter bf = state.getBloomFilter();
         if (bf == null) {
@@ -33,22 +34,38 @@ public class AbstractBloomFilterAggregation
         return bf;
     }
 
+    // Adopt the other filter as is when the state is still empty, this keeps its parameters and layout
+    public static void putAll(BloomFilterState state, BloomFilter other)
+    {
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
+            state.setBloomFilter(other);
+            state.addMemoryUsage(other.estimatedInMemorySize());
+            return;
+        }
+        state.setBloomFilter(bf.putAll(other));
+    }
+
     @CombineFunction
     public static void combine(BloomFilterState state, BloomFilterState otherState)
     {
-        int ei = BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS;
-        double fpp = BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE;
-        if (state.getBloomFilter() == null && otherState.getBloomFilter() != null) {
-            ei = otherState.getBloomFilter().getExpectedInsertions();
-            fpp  = otherState.getBloomFilter().getFalsePositivePercentage();
+        // Partial results, e.g. read back after spilling, are OR-ed in without deserializing them
+        // Filters of grouped states are materialized from their slab on every call, so each is only asked once
+        Slice serialized = otherState.getSerializedBloomFilter();
+        if (serialized != null) {
+            BloomFilter bf = state.getBloomFilter();
+            if (bf != null) {
+                state.setBloomFilter(bf.putAll(serialized));
+                return;
+            }
+        }
+        BloomFilter other = otherState.getBloomFilter();
+        if (other != null) {
+            putAll(state, other);
         }
-        else if (otherState.getBloomFilter() == null && state.getBloomFilter() != null) {
-            ei = state.getBloomFilter().getExpectedInsertions();
-            fpp  = state.getBloomFilter().getFalsePositivePercentage();
+        else {
+            getOrCreateBloomFilter(state, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
         }
-        BloomFilter bfState = getOrCreateBloomFilter(state, ei, fpp);
-        BloomFilter bfOther = getOrCreateBloomFilter(otherState, ei, fpp);
-        state.setBloomFilter(bfState.putAll(bfOther));
     }
 
     @OutputFunction(BloomFilterType.TYPE)
@@ -13,6 +13,8 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.block.Block;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
@@ -21,7 +23,11 @@ import io.airlift.log.Logger;
 import io.airlift.slice.BasicSliceInput;
 import io.airlift.slice.DynamicSliceOutput;
 import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
 import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import io.airlift.stats.TimeStat;
 import orestes.bloomfilter.FilterBuilder;
 import orestes.bloomfilter.HashProvider;
 import org.apache.commons.io.IOUtils;
@@ -33,14 +39,22 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
-// Layout is <hash>:<size>:<size_pre>:<bf_pre>:<bf>, where
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
+import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Legacy layout is <hash>:<size>:<size_pre>:<bf_pre>:<bf>, where
 //   hash: is a sha256 hash of the bloom filter
 //   size: is an int describing the length of the bf bytes
 //   size_pre: is an int describing the length of the pre bf bytes
@@ -48,14 +62,50 @@ import java.util.zip.GZIPOutputStream;
 //   falsePositivePercentage: is a double describing the desired false positive percentage
 //   bf_pre: is the serialized bloom filter used for pre-filtering
 //   bf: is the serialized bloom filter
+//
+// Other layouts are <hash>:<layout>:<payload>, where
+//   layout: is a negative int describing the layout of the payload, it takes the place of size
+//   which is never negative
+//   payload: is the serialized filter of that layout, e.g. a xor filter for LAYOUT_STATIC or the
+//   allocated partitions for LAYOUT_PARTITIONED
+//
+// New bloom filters use LAYOUT_BITSET, its payload is <expectedInsertions>:<falsePositivePercentage>:<bitset_pre>:<bitset>
+// and both bitsets are addressed by the xxhash64 of the element. Its hash is made of the content hashes
+// of both bitsets, which are kept up to date while elements are added. It is not collision resistant, so
+// filters from outside the engine are verified and keyed by a sha256 of their payload, see verify. The
+// legacy layout is still read so
+// previously persisted filters keep working. An expectedInsertions that does not fit an int is written as
+// -1 followed by a long, see writeExpectedInsertions.
+//
+// Legacy filters and LAYOUT_BITSET filters address their bits differently, so they can not be OR-ed. A
+// legacy filter merged with a bitset filter is kept next to the bitset in LAYOUT_WITH_LEGACY, its payload
+// is the LAYOUT_BITSET payload followed by <size>:<legacy filter>, and an element might be contained when
+// either of them might contain it. This keeps rollups over previously persisted filters working.
+//
+// LAYOUT_REFERENCE only holds <size>:<location> of a filter resident in the BloomFilterRegistry, its hash
+// is the hash of the referenced filter so both share a cache entry.
 public class BloomFilter
 {
     private static final HashCode HASH_CODE_NOT_FOUND = HashCode.fromInt(0);
+    private static final int LAYOUT_STATIC = -1;
+    private static final int LAYOUT_PARTITIONED = -2;
+    private static final int LAYOUT_BITSET = -3;
+    private static final int LAYOUT_REFERENCE = -4;
+    private static final int LAYOUT_WITH_LEGACY = -5;
     private orestes.bloomfilter.BloomFilter instancePreFilter;
     private orestes.bloomfilter.BloomFilter instance;
-    private int expectedInsertions;
+    private BloomFilterBitSet preBitSet;
+    private BloomFilterBitSet bitSet;
+    private XorFilter staticFilter;
+    private PartitionedBloomFilter partitionedFilter;
+    private BloomFilter legacyFilter;
+    private long expectedInsertions;
     private double falsePositivePercentage;
     private long preMiss = 0;
+    private long preFilterProbes = 0;
+
+    // Serialized form until the next modification
+    private Slice serialized;
 
     private static final boolean USE_PRE_FILTER = true;
 
@@ -79,7 +129,7 @@ public class BloomFilter
         }
     }
 
-    public int getExpectedInsertions()
+    public long getExpectedInsertions()
     {
         return expectedInsertions;
     }
@@ -94,31 +144,95 @@ public class BloomFilter
         return new BloomFilter(DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
     }
 
-    public static BloomFilter newInstance(int expectedInsertions, double falsePositivePercentage)
+    public static BloomFilter newInstance(long expectedInsertions, double falsePositivePercentage)
     {
         return new BloomFilter(expectedInsertions, falsePositivePercentage);
     }
 
-    public static BloomFilter newInstance(int expectedInsertions)
+    public static BloomFilter newInstance(long expectedInsertions)
     {
         return new BloomFilter(expectedInsertions, DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
     }
 
+    // Negative values would be mistaken for the marker of a long when the filter is read back
+    public static long checkExpectedInsertions(long expectedInsertions)
+    {
+        if (expectedInsertions < 1) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Expected insertions must be at least 1, got " + expectedInsertions);
+        }
+        return expectedInsertions;
+    }
+
+    // Filter in the layout of previously persisted filters, which are only read and merged
+    @VisibleForTesting
+    static BloomFilter newLegacyInstance(long expectedInsertions, double falsePositivePercentage)
+    {
+        BloomFilter bf = new BloomFilter();
+        bf.expectedInsertions = expectedInsertions;
+        bf.falsePositivePercentage = falsePositivePercentage;
+        bf.initbloomFilters();
+        return bf;
+    }
+
+    // Bitset divided into the given amount of partitions, which should be a power of two
+    public static BloomFilter newPartitionedInstance(long expectedInsertions, double falsePositivePercentage, int partitions)
+    {
+        return new BloomFilter(PartitionedBloomFilter.newInstance(expectedInsertions, falsePositivePercentage, partitions));
+    }
+
+    // Wrap an immutable xor filter, which can be probed and serialized but not modified
+    public static BloomFilter newInstance(XorFilter staticFilter)
+    {
+        return new BloomFilter(staticFilter.getSize(), staticFilter.getFalsePositivePercentage(), staticFilter);
+    }
+
     // Construct from serialized string
     public static BloomFilter newInstance(byte[] fromBytes)
     {
-        BloomFilter bf = newInstance();
+        BloomFilter bf = new BloomFilter();
         byte[] serializedBytes = java.util.Base64.getDecoder().decode(fromBytes);
         bf.load(Slices.wrappedBuffer(serializedBytes));
         return bf;
     }
 
     public static BloomFilter fromUrl(String url) throws Exception
+    {
+        byte[] bytes = fetch(url);
+        if (bytes == null) {
+            return null;
+        }
+
+        // Keep it resident, so references to this url do not fetch it again
+        Slice serialized = BloomFilterRegistry.decode(url, bytes);
+        BloomFilterRegistry.register(url, serialized);
+        return newInstance(serialized);
+    }
+
+    // Base64 serialized filter at the url, null if it is not there
+    public static byte[] fetch(String url) throws Exception
     {
         log.info("Loading bloom filter from " + url);
+        try (TimeStat.BlockTimer ignored = STATS.getDownloadTime().time()) {
+            byte[] bytes = download(url, true);
+            if (bytes == null) {
+                STATS.getDownloadFailures().update(1);
+            }
+            else {
+                STATS.getDownloadBytes().add(bytes.length);
+            }
+            return bytes;
+        }
+        catch (Exception ex) {
+            STATS.getDownloadFailures().update(1);
+            throw ex;
+        }
+    }
 
+    private static byte[] download(String url, boolean retryChunks) throws Exception
+    {
         Request request = BloomFilterScalarFunctions.HTTP_CLIENT.newRequest(url);
         request.method("GET");
+        request.header(BloomFilterChunks.CHUNKS_HEADER, "manifest");
         InputStreamResponseListener listener = new InputStreamResponseListener();
         request.send(listener);
 
@@ -128,27 +242,116 @@ public class BloomFilter
         // Look at the response
         if (response.getStatus() == 200) {
             // Use try-with-resources to close input stream.
+            byte[] body;
             try (InputStream responseContent = listener.getInputStream()) {
-                byte[] bytes = ByteStreams.toByteArray(responseContent);
-                return newInstance(bytes);
+                body = ByteStreams.toByteArray(responseContent);
+            }
+
+            // Large filters are stored in chunks, which are fetched in parallel
+            if (response.getHeaders().containsKey(BloomFilterChunks.CHUNKS_HEADER) && BloomFilterChunks.isManifest(body)) {
+                try {
+                    return BloomFilterChunks.fetch(BloomFilterScalarFunctions.HTTP_CLIENT, url, body);
+                }
+                catch (IOException ex) {
+                    // The chunks are gone when the filter was persisted again meanwhile, its new manifest
+                    // points to the new ones
+                    if (!retryChunks) {
+                        throw ex;
+                    }
+                    log.warn("Fetching chunks of " + url + " failed, fetching its manifest again: " + ex.getMessage());
+                    return download(url, false);
+                }
             }
+            return body;
         }
         log.warn("Non-200 response status " + response.getStatus());
         return null;
     }
 
+    // Small stand-in for the filter at the location, which is resolved from the registry of the worker
+    // that deserializes it
+    public static Slice newReference(String location)
+    {
+        Slice serialized = BloomFilterRegistry.get(location);
+        byte[] locationBytes = location.getBytes(UTF_8);
+        DynamicSliceOutput output = new DynamicSliceOutput(40 + locationBytes.length);
+
+        // Write hash of the referenced filter
+        output.writeBytes(serialized, 0, 32); // 32 bytes
+
+        // Write the layout
+        output.appendInt(LAYOUT_REFERENCE);
+
+        // Write the location
+        output.appendInt(locationBytes.length);
+        output.appendBytes(locationBytes);
+        return output.slice();
+    }
+
+    public static boolean isReference(Slice serialized)
+    {
+        return serialized != null && serialized.length() >= 36 && serialized.getInt(32) == LAYOUT_REFERENCE;
+    }
+
     public static BloomFilter newInstance(Slice serialized)
     {
-        BloomFilter bf = newInstance();
+        BloomFilter bf = new BloomFilter();
         bf.load(serialized);
         return bf;
     }
 
-    private BloomFilter(int expectedInsertions, double falsePositivePercentage)
+    // Nothing is allocated until load
+    private BloomFilter()
+    {
+    }
+
+    private BloomFilter(long expectedInsertions, double falsePositivePercentage)
+    {
+        this.expectedInsertions = checkExpectedInsertions(expectedInsertions);
+        this.falsePositivePercentage = falsePositivePercentage;
+        bitSet = BloomFilterBitSet.newInstance(expectedInsertions, falsePositivePercentage);
+        preBitSet = BloomFilterBitSet.newInstance(preFilterInsertions(expectedInsertions), preFilterFalsePositivePercentage(falsePositivePercentage), 1);
+    }
+
+    private BloomFilter(int expectedInsertions, double falsePositivePercentage, XorFilter staticFilter)
     {
         this.expectedInsertions = expectedInsertions;
         this.falsePositivePercentage = falsePositivePercentage;
-        initbloomFilters();
+        this.staticFilter = staticFilter;
+    }
+
+    private BloomFilter(PartitionedBloomFilter partitionedFilter)
+    {
+        this.expectedInsertions = partitionedFilter.getExpectedInsertions();
+        this.falsePositivePercentage = partitionedFilter.getFalsePositivePercentage();
+        this.partitionedFilter = partitionedFilter;
+    }
+
+    public boolean isStatic()
+    {
+        return staticFilter != null;
+    }
+
+    public boolean isPartitioned()
+    {
+        return partitionedFilter != null;
+    }
+
+    // Whether some elements are only in a legacy filter, these can not be probed by hash
+    public boolean hasLegacy()
+    {
+        return instance != null || legacyFilter != null;
+    }
+
+    // Bitset of filters using LAYOUT_BITSET, null for all other layouts
+    BloomFilterBitSet getBitSet()
+    {
+        return legacyFilter == null ? bitSet : null;
+    }
+
+    BloomFilterBitSet getPreBitSet()
+    {
+        return legacyFilter == null ? preBitSet : null;
     }
 
     public byte[] toBase64()
@@ -161,10 +364,24 @@ public class BloomFilter
         if (s == null) {
             return this;
         }
+        serialized = null;
+        if (partitionedFilter != null) {
+            if (s.length() > 0) {
+                partitionedFilter.put(XxHash64.hash(s));
+            }
+            return this;
+        }
         byte[] b = s.getBytes();
         if (b.length < 1) {
             return this;
         }
+        checkNotStatic();
+        if (bitSet != null) {
+            long hash = XxHash64.hash(s);
+            bitSet.put(hash);
+            preBitSet.put(hash);
+            return this;
+        }
         instance.add(b);
         if (USE_PRE_FILTER) {
             instancePreFilter.add(b);
@@ -172,8 +389,99 @@ public class BloomFilter
         return this;
     }
 
+    // The pre filter is a tenth of the size with a single hash
+    static long preFilterInsertions(long expectedInsertions)
+    {
+        return Math.max(expectedInsertions / 10, 10);
+    }
+
+    static double preFilterFalsePositivePercentage(double falsePositivePercentage)
+    {
+        return Math.min(falsePositivePercentage * 10, 0.5);
+    }
+
+    // Filter over bitsets that were filled elsewhere, see BloomFilterSlab
+    static BloomFilter newInstance(long expectedInsertions, double falsePositivePercentage, BloomFilterBitSet preBitSet, BloomFilterBitSet bitSet)
+    {
+        BloomFilter bf = new BloomFilter();
+        bf.expectedInsertions = expectedInsertions;
+        bf.falsePositivePercentage = falsePositivePercentage;
+        bf.preBitSet = preBitSet;
+        bf.bitSet = bitSet;
+        return bf;
+    }
+
+    public BloomFilter copy()
+    {
+        if (bitSet == null || legacyFilter != null) {
+            return newInstance(serialize());
+        }
+        return newInstance(expectedInsertions, falsePositivePercentage, preBitSet.copy(), bitSet.copy());
+    }
+
+    // Add an element by its key hash, see getKeyHash
+    public BloomFilter putHash(long hash)
+    {
+        checkNotStatic();
+        serialized = null;
+        if (partitionedFilter != null) {
+            partitionedFilter.put(hash);
+            return this;
+        }
+        if (bitSet == null) {
+            throw new PrestoException(NOT_SUPPORTED, "Legacy bloom filters can not be built from hashes");
+        }
+        bitSet.put(hash);
+        preBitSet.put(hash);
+        return this;
+    }
+
+    // The hash every hash addressed layout uses for an element
+    public static long getKeyHash(Slice s)
+    {
+        return XxHash64.hash(s);
+    }
+
     public BloomFilter putAll(BloomFilter other)
     {
+        checkNotStatic();
+        serialized = null;
+        if (other.isStatic()) {
+            throw new PrestoException(NOT_SUPPORTED, "Static filters can not be merged into other filters");
+        }
+        if (isPartitioned() || other.isPartitioned()) {
+            checkCompatiblePartitions(other);
+            partitionedFilter.putAll(other.partitionedFilter);
+            return this;
+        }
+        if (bitSet == null && other.bitSet != null) {
+            // Keep this legacy filter next to a copy of the bitsets of the other one
+            BloomFilter legacy = new BloomFilter();
+            legacy.expectedInsertions = expectedInsertions;
+            legacy.falsePositivePercentage = falsePositivePercentage;
+            legacy.instance = instance;
+            legacy.instancePreFilter = instancePreFilter;
+            instance = null;
+            instancePreFilter = null;
+            expectedInsertions = other.expectedInsertions;
+            falsePositivePercentage = other.falsePositivePercentage;
+            bitSet = other.bitSet.copy();
+            preBitSet = other.preBitSet.copy();
+            legacyFilter = legacy;
+            putAllLegacy(other.legacyFilter);
+            return this;
+        }
+        if (bitSet != null) {
+            if (other.bitSet == null) {
+                putAllLegacy(other);
+                return this;
+            }
+            checkCompatibleBitSets(other);
+            bitSet.putAll(other.bitSet);
+            preBitSet.putAll(other.preBitSet);
+            putAllLegacy(other.legacyFilter);
+            return this;
+        }
         instance.union(other.instance);
         if (USE_PRE_FILTER) {
             instancePreFilter.union(other.instancePreFilter);
@@ -181,10 +489,112 @@ public class BloomFilter
         return this;
     }
 
+    private void putAllLegacy(BloomFilter legacy)
+    {
+        if (legacy == null) {
+            return;
+        }
+        if (legacyFilter == null) {
+            legacyFilter = legacy.copy();
+        }
+        else {
+            legacyFilter.putAll(legacy);
+        }
+    }
+
+    // Merges a serialized filter, bitset filters are OR-ed straight from their serialized form without
+    // deserializing them first
+    public BloomFilter putAll(Slice other)
+    {
+        if (bitSet == null || other.length() < 36 || other.getInt(32) != LAYOUT_BITSET) {
+            return putAll(newInstance(other));
+        }
+        STATS.getDeserializedBytes().update(other.length());
+        serialized = null;
+        BasicSliceInput input = other.getInput();
+        input.setPosition(36);
+        readExpectedInsertions(input);
+        input.readDouble();
+
+        // Both bitsets are checked before either of them is changed
+        int bitSets = (int) input.position();
+        try {
+            if (!preBitSet.isCompatible(input) || !bitSet.isCompatible(input)) {
+                throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only bloom filters with the same parameters can be merged");
+            }
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Corrupt bloom filter: " + ex.getMessage(), ex);
+        }
+        input.setPosition(bitSets);
+        preBitSet.putAll(input);
+        bitSet.putAll(input);
+        return this;
+    }
+
+    // Keeps only the bits that are set in both filters. Every element added to both filters is still
+    // contained, but the false positive percentage is higher than that of a filter built from only those
+    // elements.
+    public BloomFilter retainAll(BloomFilter other)
+    {
+        checkNotStatic();
+        serialized = null;
+        if (hasLegacy() || other.hasLegacy()) {
+            throw new PrestoException(NOT_SUPPORTED, "Legacy bloom filters can not be intersected");
+        }
+        if (other.isStatic()) {
+            throw new PrestoException(NOT_SUPPORTED, "Static filters can not be intersected");
+        }
+        if (isPartitioned() || other.isPartitioned()) {
+            checkCompatiblePartitions(other);
+            partitionedFilter.retainAll(other.partitionedFilter);
+            return this;
+        }
+        checkCompatibleBitSets(other);
+        bitSet.retainAll(other.bitSet);
+        preBitSet.retainAll(other.preBitSet);
+        return this;
+    }
+
+    // Estimated amount of elements added to both filters
+    public double estimateOverlap(BloomFilter other)
+    {
+        if (hasLegacy() || other.hasLegacy()) {
+            throw new PrestoException(NOT_SUPPORTED, "Legacy bloom filters have no statistics");
+        }
+        if (isStatic() || other.isStatic()) {
+            throw new PrestoException(NOT_SUPPORTED, "Static filters can not be intersected");
+        }
+        if (isPartitioned() || other.isPartitioned()) {
+            checkCompatiblePartitions(other);
+            return partitionedFilter.estimateOverlap(other.partitionedFilter);
+        }
+        checkCompatibleBitSets(other);
+        return BloomFilterStatistics.estimateOverlap(bitSet, other.bitSet);
+    }
+
+    private void checkCompatiblePartitions(BloomFilter other)
+    {
+        if (!isPartitioned() || !other.isPartitioned() || !partitionedFilter.isCompatible(other.partitionedFilter)) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only partitioned filters with the same parameters can be merged");
+        }
+    }
+
+    private void checkCompatibleBitSets(BloomFilter other)
+    {
+        if (bitSet == null || other.bitSet == null || !bitSet.isCompatible(other.bitSet) || !preBitSet.isCompatible(other.preBitSet)) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only bloom filters with the same parameters can be merged");
+        }
+    }
+
     public boolean mightContain(Slice s)
     {
+        if (instance == null) {
+            return mightContain(XxHash64.hash(s)) || (legacyFilter != null && legacyFilter.mightContain(s));
+        }
         byte[] b = s.getBytes();
         if (USE_PRE_FILTER) {
+            preFilterProbes++;
             if (instancePreFilter.contains(b)) {
                 return instance.contains(b);
             }
@@ -198,16 +608,124 @@ public class BloomFilter
         }
     }
 
+    // Probe with a key that is hashed once for many filters, filters with the same bitset parameters
+    // share the bit positions
+    public boolean mightContain(BloomFilterProbe probe)
+    {
+        if (hasLegacy()) {
+            return mightContain(probe.getKey());
+        }
+        if (bitSet == null || bitSet.isWide()) {
+            return mightContain(probe.getHash());
+        }
+        preFilterProbes++;
+        if (USE_PRE_FILTER && !preBitSet.mightContain(probe.getPositions(preBitSet))) {
+            preMiss++;
+            return false;
+        }
+        return bitSet.mightContain(probe.getPositions(bitSet));
+    }
+
+    public boolean mightContainHash(long hash)
+    {
+        if (hasLegacy()) {
+            throw new PrestoException(NOT_SUPPORTED, "Legacy bloom filters can not be probed with hashes");
+        }
+        return mightContain(hash);
+    }
+
+    private boolean mightContain(long hash)
+    {
+        if (staticFilter != null) {
+            return staticFilter.mightContain(hash);
+        }
+        if (partitionedFilter != null) {
+            return partitionedFilter.mightContain(hash);
+        }
+        preFilterProbes++;
+        if (USE_PRE_FILTER && !preBitSet.mightContain(hash)) {
+            preMiss++;
+            return false;
+        }
+        return bitSet.mightContain(hash);
+    }
+
+    // Probes all elements of a VARCHAR block, null elements are never contained. Hash addressed layouts
+    // hash the whole block before probing so the probes do not wait on each other.
+    public boolean[] mightContain(Block values)
+    {
+        int positions = values.getPositionCount();
+        boolean[] result = new boolean[positions];
+        if (hasLegacy()) {
+            for (int i = 0; i < positions; i++) {
+                result[i] = !values.isNull(i) && mightContain(VARCHAR.getSlice(values, i));
+            }
+            return result;
+        }
+
+        long[] hashes = new long[positions];
+        for (int i = 0; i < positions; i++) {
+            if (!values.isNull(i)) {
+                hashes[i] = XxHash64.hash(VARCHAR.getSlice(values, i));
+            }
+        }
+        for (int i = 0; i < positions; i++) {
+            if (!values.isNull(i)) {
+                result[i] = mightContain(hashes[i]);
+            }
+        }
+        return result;
+    }
+
+    public BloomFilterStatistics getStatistics()
+    {
+        if (hasLegacy()) {
+            throw new PrestoException(NOT_SUPPORTED, "Legacy bloom filters have no statistics");
+        }
+        if (staticFilter != null) {
+            return BloomFilterStatistics.of(staticFilter);
+        }
+        if (partitionedFilter != null) {
+            return partitionedFilter.getStatistics();
+        }
+        return BloomFilterStatistics.of(preBitSet, bitSet);
+    }
+
     @VisibleForTesting
     public long getPreMiss()
     {
         return preMiss;
     }
 
+    public long getPreFilterProbes()
+    {
+        return preFilterProbes;
+    }
+
+    private void checkNotStatic()
+    {
+        if (staticFilter != null) {
+            throw new PrestoException(NOT_SUPPORTED, "Static filters are immutable");
+        }
+    }
+
     private void load(Slice serialized)
     {
+        load(serialized, false);
+    }
+
+    // Verified loads fail on anything but a complete, well formed layout instead of falling back to an
+    // empty filter, see verify
+    private void load(Slice serialized, boolean verify)
+    {
+        STATS.getDeserializedBytes().update(serialized.length());
         BasicSliceInput input = serialized.getInput();
 
+        // Slices of a larger buffer, like a page, are not kept
+        if (serialized.getRetainedSize() <= serialized.length() + 64) {
+            this.serialized = serialized;
+        }
+
         // Read hash
         byte[] bfHash = new byte[32];
         input.readBytes(bfHash, 0, 32);
@@ -215,6 +733,50 @@ public class BloomFilter
         // Get the size of the bloom filter
         int bfSize = input.readInt();
 
+        // Tagged layout
+        if (bfSize == LAYOUT_REFERENCE) {
+            byte[] location = new byte[input.readInt()];
+            input.readBytes(location);
+
+            // Serializes to the referenced filter
+            this.serialized = null;
+            load(BloomFilterRegistry.get(new String(location, UTF_8), Slices.wrappedBuffer(bfHash)));
+            return;
+        }
+        if (bfSize == LAYOUT_STATIC) {
+            staticFilter = XorFilter.readFrom(input);
+            expectedInsertions = staticFilter.getSize();
+            falsePositivePercentage = staticFilter.getFalsePositivePercentage();
+            checkConsumed(input, verify);
+            return;
+        }
+        if (bfSize == LAYOUT_BITSET || bfSize == LAYOUT_WITH_LEGACY) {
+            expectedInsertions = readExpectedInsertions(input);
+            falsePositivePercentage = input.readDouble();
+            preBitSet = BloomFilterBitSet.readFrom(input);
+            bitSet = BloomFilterBitSet.readFrom(input);
+            if (bfSize == LAYOUT_WITH_LEGACY) {
+                Slice legacy = input.readSlice(input.readInt());
+                if (verify && (legacy.length() < 36 || legacy.getInt(32) < 0)) {
+                    throw new IllegalArgumentException("Not a legacy bloom filter");
+                }
+                legacyFilter = new BloomFilter();
+                legacyFilter.load(legacy, verify);
+            }
+            checkConsumed(input, verify);
+            return;
+        }
+        if (bfSize == LAYOUT_PARTITIONED) {
+            partitionedFilter = PartitionedBloomFilter.readFrom(input);
+            expectedInsertions = partitionedFilter.getExpectedInsertions();
+            falsePositivePercentage = partitionedFilter.getFalsePositivePercentage();
+            checkConsumed(input, verify);
+            return;
+        }
+        if (bfSize < 0) {
+            throw new IllegalArgumentException("Unknown bloom filter layout " + bfSize);
+        }
+
         // Get the size of the bloom filter
         int bfSizePre = input.readInt();
 
@@ -222,71 +784,106 @@ public class BloomFilter
         expectedInsertions = input.readInt();
         falsePositivePercentage = input.readDouble();
 
-        // Read the buffer
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            input.readBytes(out, bfSize);
-        }
-        catch (IOException ix) {
-            log.error(ix);
+        // Setup bloom filters, the pre filter follows the filter
+        instance = readLegacy(input, bfSize, verify);
+        instancePreFilter = readLegacy(input, bfSizePre, verify);
+        if (instance == null || instancePreFilter == null) {
+            initbloomFilters();
         }
+        checkConsumed(input, verify);
+    }
 
-        // Uncompress
-        byte[] uncompressed;
-        try {
-            uncompressed = decompress(out.toByteArray());
-        }
-        catch (IOException ix) {
-            log.error(ix);
-            uncompressed = new byte[0];
+    private static void checkConsumed(SliceInput input, boolean verify)
+    {
+        if (verify && input.isReadable()) {
+            throw new IllegalArgumentException(input.available() + " unexpected bytes after the bloom filter");
         }
+    }
 
-        // Input stream
-        ByteArrayInputStream in = new ByteArrayInputStream(uncompressed);
-
-        // Setup bloom filter
+    // Java serialized orestes filter, null if it can not be read. Verified reads only resolve the classes a
+    // serialized filter is made of, as the bytes may come from anywhere.
+    private static orestes.bloomfilter.BloomFilter readLegacy(SliceInput input, int size, boolean verify)
+    {
         try {
-            ObjectInputStream ois = new ObjectInputStream(in);
-            instance = (orestes.bloomfilter.BloomFilter) ois.readObject();
-            input.close();
+            if (size < 0 || size > input.available()) {
+                throw new IOException("Legacy bloom filter of " + size + " bytes is truncated");
+            }
+            byte[] compressed = new byte[size];
+            input.readBytes(compressed);
+            ByteArrayInputStream in = new ByteArrayInputStream(decompress(compressed));
+            try (ObjectInputStream ois = verify ? new LegacyObjectInputStream(in) : new ObjectInputStream(in)) {
+                return (orestes.bloomfilter.BloomFilter) ois.readObject();
+            }
         }
         catch (Exception ix) {
+            if (verify) {
+                throw new IllegalArgumentException("Corrupt legacy bloom filter: " + ix.getMessage(), ix);
+            }
             log.error(ix);
-            initbloomFilters();
+            return null;
         }
+    }
 
-        // Read the buffer
-        ByteArrayOutputStream outPre = new ByteArrayOutputStream();
-        try {
-            input.readBytes(outPre, bfSizePre);
+    private static final class LegacyObjectInputStream
+            extends ObjectInputStream
+    {
+        private LegacyObjectInputStream(InputStream in)
+                throws IOException
+        {
+            super(in);
         }
-        catch (IOException ix) {
-            log.error(ix);
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description)
+                throws IOException, ClassNotFoundException
+        {
+            String name = description.getName();
+            if (!name.startsWith("orestes.bloomfilter.") && !name.startsWith("java.lang.") && !name.startsWith("java.util.") && !name.startsWith("[")) {
+                throw new InvalidClassException(name, "Not part of a serialized bloom filter");
+            }
+            return super.resolveClass(description);
         }
+    }
 
-        // Uncompress
-        byte[] uncompressedPre;
-        try {
-            uncompressedPre = decompress(outPre.toByteArray());
+    // Serialized filter from an untrusted source, e.g. a cast from VARBINARY, in the form it is used in.
+    // The hash in the header is the key of the filter cache of every worker, so the layout has to parse
+    // completely and the hash has to match it. A sha256 of the payload covers all of it and is kept. The
+    // hashes the engine writes itself are accepted too, but the content hash of LAYOUT_BITSET can be matched
+    // by a crafted bitset and the legacy hash only covers the filter, not the pre filter and parameters, so
+    // those are returned under the sha256 of their payload. Fails with IllegalArgumentException otherwise.
+    public static Slice verify(Slice serialized)
+    {
+        if (serialized.length() < 36) {
+            throw new IllegalArgumentException("Serialized bloom filter of " + serialized.length() + " bytes is too short");
         }
-        catch (IOException ix) {
-            log.error(ix);
-            uncompressedPre = new byte[0];
+        int layout = serialized.getInt(32);
+        if (layout == LAYOUT_REFERENCE) {
+            throw new IllegalArgumentException("References are only valid on the worker holding the filter");
         }
-
-        // Input stream
-        ByteArrayInputStream inPre = new ByteArrayInputStream(uncompressedPre);
-
-        // Setup bloom filter
+        BloomFilter bf = new BloomFilter();
         try {
-            ObjectInputStream ois = new ObjectInputStream(inPre);
-            instancePreFilter = (orestes.bloomfilter.BloomFilter) ois.readObject();
-            input.close();
+            bf.load(serialized, true);
         }
-        catch (Exception ix) {
-            log.error(ix);
-            initbloomFilters();
+        catch (IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Serialized bloom filter is truncated", ex);
         }
+        Slice hash = serialized.slice(0, 32);
+        Slice payload = serialized.slice(36, serialized.length() - 36);
+        Slice payloadHash = Slices.wrappedBuffer(Hashing.sha256().hashBytes(payload.getBytes()).asBytes());
+        if (hash.equals(payloadHash)) {
+            return serialized;
+        }
+        if ((layout == LAYOUT_BITSET && hash.equals(bf.bitSetHash())) || (layout >= 0 && hash.equals(bf.legacyHash()))) {
+            return serializeLayout(payloadHash, layout, payload);
+        }
+        throw new IllegalArgumentException("Hash does not match the content of the bloom filter");
+    }
+
+    // The legacy hash is a sha256 of the java serialized filter
+    private Slice legacyHash()
+    {
+        this.serialized = null;
+        return serialize().slice(0, 32);
     }
 
     private void initbloomFilters()
@@ -298,7 +895,7 @@ public class BloomFilter
     private orestes.bloomfilter.BloomFilter newBloomFilter()
     {
         return
-                new FilterBuilder(expectedInsertions, falsePositivePercentage)
+                new FilterBuilder((int) expectedInsertions, falsePositivePercentage)
                         .hashFunction(HashProvider.HashMethod.Murmur3KirschMitzenmacher)
                         .buildBloomFilter();
     }
@@ -306,7 +903,7 @@ public class BloomFilter
     private orestes.bloomfilter.BloomFilter newPreBloomFilter()
     {
         return
-                new FilterBuilder(Math.max(expectedInsertions / 10, 10), Math.min(falsePositivePercentage * 10, 0.5))
+                new FilterBuilder((int) Math.max(expectedInsertions / 10, 10), Math.min(falsePositivePercentage * 10, 0.5))
                         .hashFunction(HashProvider.HashMethod.FNVWithLCG)
                         .hashes(1)
                         .buildBloomFilter();
@@ -314,6 +911,29 @@ public class BloomFilter
 
     public Slice serialize()
     {
+        if (serialized != null) {
+            return serialized;
+        }
+        try (TimeStat.BlockTimer ignored = STATS.getSerializeTime().time()) {
+            serialized = serializeFilter();
+            return serialized;
+        }
+    }
+
+    private Slice serializeFilter()
+    {
+        if (staticFilter != null) {
+            return serializeStatic();
+        }
+        if (partitionedFilter != null) {
+            return serializePartitioned();
+        }
+        if (legacyFilter != null) {
+            return serializeWithLegacy();
+        }
+        if (bitSet != null) {
+            return serializeBitSet();
+        }
         byte[] bytes = new byte[0];
         byte[] bytesPre = new byte[0];
         try {
@@ -369,7 +989,7 @@ public class BloomFilter
         output.appendInt(sizePre);
 
         // Params
-        output.appendInt(expectedInsertions);
+        output.appendInt((int) expectedInsertions);
         output.appendDouble(falsePositivePercentage);
 
         // Write the bloom filter
@@ -381,6 +1001,77 @@ public class BloomFilter
         return output.slice();
     }
 
+    private Slice serializeStatic()
+    {
+        DynamicSliceOutput payload = new DynamicSliceOutput(staticFilter.estimatedInMemorySize() + 32);
+        staticFilter.writeTo(payload);
+        return serializeLayout(LAYOUT_STATIC, payload.slice());
+    }
+
+    private Slice serializeBitSet()
+    {
+        DynamicSliceOutput payload = new DynamicSliceOutput(1024);
+        writeBitSets(payload);
+
+        // The content hashes are far cheaper than a sha256 of the payload, but can be matched on purpose
+        return serializeLayout(bitSetHash(), LAYOUT_BITSET, payload.slice());
+    }
+
+    private Slice bitSetHash()
+    {
+        DynamicSliceOutput hash = new DynamicSliceOutput(32);
+        bitSet.writeContentHash(hash);
+        preBitSet.writeContentHash(hash);
+        Slice hashSlice = hash.slice();
+        hashSlice.setLong(0, hashSlice.getLong(0) ^ XxHash64.hash(Double.doubleToLongBits(falsePositivePercentage) + expectedInsertions));
+        return hashSlice;
+    }
+
+    private Slice serializeWithLegacy()
+    {
+        Slice legacy = legacyFilter.serialize();
+        DynamicSliceOutput payload = new DynamicSliceOutput(legacy.length() + 1024);
+        writeBitSets(payload);
+        payload.appendInt(legacy.length());
+        payload.appendBytes(legacy);
+        return serializeLayout(LAYOUT_WITH_LEGACY, payload.slice());
+    }
+
+    private void writeBitSets(SliceOutput payload)
+    {
+        writeExpectedInsertions(payload, expectedInsertions);
+        payload.appendDouble(falsePositivePercentage);
+        preBitSet.writeTo(payload);
+        bitSet.writeTo(payload);
+    }
+
+    private Slice serializePartitioned()
+    {
+        DynamicSliceOutput payload = new DynamicSliceOutput(1024);
+        partitionedFilter.writeTo(payload);
+        return serializeLayout(LAYOUT_PARTITIONED, payload.slice());
+    }
+
+    private static Slice serializeLayout(int layout, Slice payload)
+    {
+        return serializeLayout(Slices.wrappedBuffer(Hashing.sha256().hashBytes(payload.getBytes()).asBytes()), layout, payload);
+    }
+
+    private static Slice serializeLayout(Slice hash, int layout, Slice payload)
+    {
+        DynamicSliceOutput output = new DynamicSliceOutput(payload.length() + 36);
+
+        // Write hash
+        output.writeBytes(hash); // 32 bytes
+
+        // Write the layout
+        output.appendInt(layout);
+
+        // Write the filter
+        output.appendBytes(payload);
+        return output.slice();
+    }
+
     public static byte[] compress(byte[] b) throws IOException
     {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -399,6 +1090,15 @@ public class BloomFilter
 
     public int estimatedInMemorySize()
     {
+        if (staticFilter != null) {
+            return staticFilter.estimatedInMemorySize();
+        }
+        if (partitionedFilter != null) {
+            return partitionedFilter.estimatedInMemorySize();
+        }
+        if (legacyFilter != null) {
+            return bitSet.getSizeInBytes() + preBitSet.getSizeInBytes() + legacyFilter.estimatedInMemorySize();
+        }
         // m = ceil((n * log(p)) / log(1.0 / (pow(2.0, log(2.0)))));
         // k = round(log(2.0) * m / n);
         // Source: http://hur.st/bloomfilter
@@ -406,6 +1106,28 @@ public class BloomFilter
         return (int) Math.round(m);
     }
 
+    // Written as an int when it fits so filters stay readable by older versions, otherwise as -1 followed
+    // by a long
+    public static void writeExpectedInsertions(SliceOutput output, long expectedInsertions)
+    {
+        if (expectedInsertions <= Integer.MAX_VALUE) {
+            output.appendInt((int) expectedInsertions);
+        }
+        else {
+            output.appendInt(-1);
+            output.appendLong(expectedInsertions);
+        }
+    }
+
+    public static long readExpectedInsertions(SliceInput input)
+    {
+        int expectedInsertions = input.readInt();
+        if (expectedInsertions < 0) {
+            return input.readLong();
+        }
+        return expectedInsertions;
+    }
+
     public static HashCode readHash(Slice s)
     {
         if (s == null) {
@@ -33,9 +33,7 @@ public class BloomFilterAggregation extends AbstractBloomFilterAggregation
             BloomFilterState state,
             @SqlType(VARCHAR) Slice slice)
     {
-        BloomFilter bf = getOrCreateBloomFilter(state, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
-        // Note: do not update the memory size as this is constant to our bloom filter implementation
-        bf.put(slice);
+        state.put(slice, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
     }
 
     @InputFunction
@@ -44,9 +42,7 @@ public class BloomFilterAggregation extends AbstractBloomFilterAggregation
             @SqlType(VARCHAR) Slice slice,
             @SqlType(StandardTypes.BIGINT) long expectedInsertions)
     {
-        BloomFilter bf = getOrCreateBloomFilter(state, (int) expectedInsertions, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
-        // Note: do not update the memory size as this is constant to our bloom filter implementation
-        bf.put(slice);
+        state.put(slice, expectedInsertions, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
     }
 
     @InputFunction
@@ -56,8 +52,6 @@ public class BloomFilterAggregation extends AbstractBloomFilterAggregation
             @SqlType(StandardTypes.BIGINT) long expectedInsertions,
             @SqlType(StandardTypes.DOUBLE) double falsePositivePercentage)
     {
-        BloomFilter bf = getOrCreateBloomFilter(state, (int) expectedInsertions, falsePositivePercentage);
-        // Note: do not update the memory size as this is constant to our bloom filter implementation
-        bf.put(slice);
+        state.put(slice, expectedInsertions, falsePositivePercentage);
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import io.airlift.slice.Slice;
+
+// Assembles partitioned filters that were built per partition, partitions present in only one input are
+// taken over without re-hashing or OR-ing
+@AggregationFunction(value = "bloom_filter_assemble")
+public class BloomFilterAssembleAggregation extends AbstractBloomFilterAggregation
+{
+    private BloomFilterAssembleAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(BloomFilterType.TYPE) Slice slice)
+    {
+        putAll(state, BloomFilter.newInstance(slice));
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.google.common.io.ByteStreams;
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+// Plain bloom filter bitset addressed by a 64 bit key hash, bit positions are derived from the two
+// halves of the hash (Kirsch & Mitzenmacher, "Less Hashing, Same Performance"). Bitsets of more than
+// Integer.MAX_VALUE bits combine the hash with a second 64 bit hash instead, smaller ones keep the 32 bit
+// positions so persisted filters stay readable.
+//
+// Layout is <hashes>:<bits>:<size>:<words>, where
+//   hashes: is an int describing the amount of bits set per key
+//   bits: is an int describing the amount of bits in the bitset, or minus the amount of words for bitsets
+//   of more than Integer.MAX_VALUE bits
+//   size: is an int describing the length of the compressed words
+//   words: are the gzip compressed little endian words
+//
+// The 128 bit content hash is the sum of the hashes of blocks of BLOCK_WORDS words, writes mark their block
+// dirty and only dirty blocks are hashed again. It tells filters built by the engine apart, but as a sum of
+// non-cryptographic hashes it can be matched by a crafted bitset, see BloomFilter.verify.
+public final class BloomFilterBitSet
+{
+    private static final int BLOCK_WORDS_SHIFT = 6;
+    private static final int BLOCK_BYTES = 8 << BLOCK_WORDS_SHIFT;
+    private static final int MERGE_CHUNK_BYTES = 64 * 1024;
+
+    // Words of a single filter are serialized into one slice, so they have to stay well below 2GB
+    public static final long MAX_BITS = 1L << 33;
+    // A false positive percentage of Double.MIN_VALUE needs about 1075 hashes
+    private static final int MAX_HASHES = 1 << 11;
+
+    private final int hashes;
+    private final long bits;
+    private final long[] words;
+
+    // Two hashes per block, and one dirty bit per block
+    private final long[] blockHashes;
+    private final long[] dirtyBlocks;
+    private long contentHash1;
+    private long contentHash2;
+
+    private BloomFilterBitSet(int hashes, long bits, long[] words)
+    {
+        this.hashes = hashes;
+        this.bits = bits;
+        this.words = words;
+        int blocks = (words.length + (1 << BLOCK_WORDS_SHIFT) - 1) >>> BLOCK_WORDS_SHIFT;
+        this.blockHashes = new long[blocks * 2];
+        this.dirtyBlocks = new long[(blocks + 63) >>> 6];
+        for (int block = 0; block < blocks; block++) {
+            dirtyBlocks[block >>> 6] |= 1L << block;
+        }
+    }
+
+    public static BloomFilterBitSet newInstance(long expectedInsertions, double falsePositivePercentage)
+    {
+        long bits = bits(expectedInsertions, falsePositivePercentage);
+        return new BloomFilterBitSet(hashes(expectedInsertions, bits), bits, new long[(int) (bits >>> 6)]);
+    }
+
+    // Sized for the given parameters, but with a fixed amount of hashes
+    public static BloomFilterBitSet newInstance(long expectedInsertions, double falsePositivePercentage, int hashes)
+    {
+        long bits = bits(expectedInsertions, falsePositivePercentage);
+        return new BloomFilterBitSet(hashes, bits, new long[(int) (bits >>> 6)]);
+    }
+
+    // Same sizes as newInstance, for bitsets that threads add to at the same time
+    static Concurrent newConcurrent(long expectedInsertions, double falsePositivePercentage)
+    {
+        long bits = bits(expectedInsertions, falsePositivePercentage);
+        return new Concurrent(hashes(expectedInsertions, bits), bits);
+    }
+
+    static Concurrent newConcurrent(long expectedInsertions, double falsePositivePercentage, int hashes)
+    {
+        return new Concurrent(hashes, bits(expectedInsertions, falsePositivePercentage));
+    }
+
+    private static long bits(long expectedInsertions, double falsePositivePercentage)
+    {
+        long n = Math.max(expectedInsertions, 1);
+
+        // m = ceil((n * log(p)) / log(1.0 / (pow(2.0, log(2.0)))));
+        // k = round(log(2.0) * m / n);
+        long m = (long) Math.ceil((n * Math.log(falsePositivePercentage)) / BloomFilter.BF_MEM_CONSTANT);
+        if (m > MAX_BITS) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, String.format("A bloom filter for %s expected insertions at %s false positives needs %s bits, at most %s fit in one filter", expectedInsertions, falsePositivePercentage, m, MAX_BITS));
+        }
+        // Bitsets that fit in an int stay below Integer.MAX_VALUE once rounded up to whole words
+        if (m <= Integer.MAX_VALUE) {
+            m = Math.min(m, Integer.MAX_VALUE - 63);
+        }
+        return Math.max(64, (m + 63) & ~63L);
+    }
+
+    private static int hashes(long expectedInsertions, long bits)
+    {
+        return Math.max(1, (int) Math.round(Math.log(2.0) * bits / Math.max(expectedInsertions, 1)));
+    }
+
+    // Bitset over words that were filled elsewhere, e.g. copied out of a slab
+    static BloomFilterBitSet wrap(int hashes, long bits, long[] words)
+    {
+        return new BloomFilterBitSet(hashes, bits, words);
+    }
+
+    public int getHashes()
+    {
+        return hashes;
+    }
+
+    public long getBits()
+    {
+        return bits;
+    }
+
+    // Whether positions are 64 bit, these bitsets can not be addressed with int positions
+    public boolean isWide()
+    {
+        return isWide(bits);
+    }
+
+    public static boolean isWide(long bits)
+    {
+        return bits > Integer.MAX_VALUE;
+    }
+
+    // Position of the i-th (from 1) bit of the hash
+    public static long position(long hash, int i, long bits)
+    {
+        if (isWide(bits)) {
+            long combined = hash + i * wideHash(hash);
+            return (combined & Long.MAX_VALUE) % bits;
+        }
+        int combined = (int) hash + i * (int) (hash >>> 32);
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % (int) bits;
+    }
+
+    // Second hash for 64 bit positions (Murmur3 finalizer), odd so every step moves
+    private static long wideHash(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash | 1;
+    }
+
+    public void put(long hash)
+    {
+        for (int i = 1; i <= hashes; i++) {
+            long bit = position(hash, i, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+            dirtyBlocks[(int) (bit >>> (BLOCK_WORDS_SHIFT + 12))] |= 1L << (bit >>> (BLOCK_WORDS_SHIFT + 6));
+        }
+    }
+
+    public BloomFilterBitSet copy()
+    {
+        return new BloomFilterBitSet(hashes, bits, words.clone());
+    }
+
+    // Amount of set bits, with four independent sums so the popcounts of consecutive words overlap
+    public long bitCount()
+    {
+        long count0 = 0;
+        long count1 = 0;
+        long count2 = 0;
+        long count3 = 0;
+        int i = 0;
+        for (; i + 3 < words.length; i += 4) {
+            count0 += Long.bitCount(words[i]);
+            count1 += Long.bitCount(words[i + 1]);
+            count2 += Long.bitCount(words[i + 2]);
+            count3 += Long.bitCount(words[i + 3]);
+        }
+        for (; i < words.length; i++) {
+            count0 += Long.bitCount(words[i]);
+        }
+        return count0 + count1 + count2 + count3;
+    }
+
+    public int getSizeInBytes()
+    {
+        return words.length * 8;
+    }
+
+    public boolean mightContain(long hash)
+    {
+        for (int i = 1; i <= hashes; i++) {
+            long bit = position(hash, i, bits);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bit positions of the hash, these only depend on the amount of hashes and bits so they can be
+    // reused for every compatible bitset. Only for bitsets that are not wide.
+    public int[] getPositions(long hash)
+    {
+        return getPositions(hash, hashes, (int) bits);
+    }
+
+    public static int[] getPositions(long hash, int hashes, int bits)
+    {
+        int[] positions = new int[hashes];
+        for (int i = 1; i <= hashes; i++) {
+            positions[i - 1] = (int) position(hash, i, bits);
+        }
+        return positions;
+    }
+
+    public boolean mightContain(int[] positions)
+    {
+        for (int bit : positions) {
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Backing words, bit i is bit (i & 63) of word (i >>> 6). Writing them directly is not seen by the
+    // content hash.
+    long[] getWords()
+    {
+        return words;
+    }
+
+    public boolean isCompatible(BloomFilterBitSet other)
+    {
+        return hashes == other.hashes && bits == other.bits;
+    }
+
+    public void putAll(BloomFilterBitSet other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Bitsets are not compatible");
+        }
+        long[] otherWords = other.words;
+        for (int i = 0; i < words.length; i++) {
+            long merged = words[i] | otherWords[i];
+            if (merged != words[i]) {
+                words[i] = merged;
+                dirtyBlocks[i >>> (BLOCK_WORDS_SHIFT + 6)] |= 1L << (i >>> BLOCK_WORDS_SHIFT);
+            }
+        }
+    }
+
+    // Reads past a bitset written by writeTo, true if it has the shape of this one so it can be OR-ed in
+    public boolean isCompatible(SliceInput input)
+    {
+        int otherHashes = input.readInt();
+        long otherBits = readBits(input);
+        int size = input.readInt();
+        if (size < 0 || size > input.available()) {
+            throw new IllegalArgumentException("Corrupt bitset of " + size + " compressed bytes");
+        }
+        input.skipBytes(size);
+        return otherHashes == hashes && otherBits == bits;
+    }
+
+    // ORs a bitset written by writeTo straight into this one, the words are inflated in small chunks instead
+    // of into a bitset of their own
+    public void putAll(SliceInput input)
+    {
+        int otherHashes = input.readInt();
+        long otherBits = readBits(input);
+        if (otherHashes != hashes || otherBits != bits) {
+            throw new IllegalArgumentException("Bitsets are not compatible");
+        }
+        Slice compressed = input.readSlice(input.readInt());
+        byte[] buffer = new byte[Math.min(MERGE_CHUNK_BYTES, words.length * 8)];
+        Slice chunk = Slices.wrappedBuffer(buffer);
+        try (GZIPInputStream gzip = new GZIPInputStream(compressed.getInput())) {
+            for (int word = 0; word < words.length; ) {
+                int length = Math.min(chunk.length(), (words.length - word) * 8);
+                ByteStreams.readFully(gzip, buffer, 0, length);
+                for (int offset = 0; offset < length; offset += 8, word++) {
+                    long merged = words[word] | chunk.getLong(offset);
+                    if (merged != words[word]) {
+                        words[word] = merged;
+                        dirtyBlocks[word >>> (BLOCK_WORDS_SHIFT + 6)] |= 1L << (word >>> BLOCK_WORDS_SHIFT);
+                    }
+                }
+            }
+        }
+        catch (IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+    }
+
+    // Keeps only the bits that are set in both bitsets
+    public void retainAll(BloomFilterBitSet other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Bitsets are not compatible");
+        }
+        long[] otherWords = other.words;
+        for (int i = 0; i < words.length; i++) {
+            long retained = words[i] & otherWords[i];
+            if (retained != words[i]) {
+                words[i] = retained;
+                dirtyBlocks[i >>> (BLOCK_WORDS_SHIFT + 6)] |= 1L << (i >>> BLOCK_WORDS_SHIFT);
+            }
+        }
+    }
+
+    // Amount of set bits of the union of both bitsets, without building it
+    public long bitCountOr(BloomFilterBitSet other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Bitsets are not compatible");
+        }
+        long[] otherWords = other.words;
+        long count0 = 0;
+        long count1 = 0;
+        int i = 0;
+        for (; i + 1 < words.length; i += 2) {
+            count0 += Long.bitCount(words[i] | otherWords[i]);
+            count1 += Long.bitCount(words[i + 1] | otherWords[i + 1]);
+        }
+        for (; i < words.length; i++) {
+            count0 += Long.bitCount(words[i] | otherWords[i]);
+        }
+        return count0 + count1;
+    }
+
+    // Writes the 128 bit content hash, which is far cheaper than hashing the serialized bitset as only the
+    // blocks written since the last call are hashed
+    public void writeContentHash(SliceOutput output)
+    {
+        Slice slice = Slices.wrappedLongArray(words);
+        for (int i = 0; i < dirtyBlocks.length; i++) {
+            long dirty = dirtyBlocks[i];
+            while (dirty != 0) {
+                int block = (i << 6) + Long.numberOfTrailingZeros(dirty);
+                dirty &= dirty - 1;
+                int offset = block * BLOCK_BYTES;
+                int length = Math.min(BLOCK_BYTES, slice.length() - offset);
+                long hash1 = XxHash64.hash(block, slice, offset, length);
+                long hash2 = XxHash64.hash(~block, slice, offset, length);
+                contentHash1 += hash1 - blockHashes[block * 2];
+                contentHash2 += hash2 - blockHashes[block * 2 + 1];
+                blockHashes[block * 2] = hash1;
+                blockHashes[block * 2 + 1] = hash2;
+            }
+            dirtyBlocks[i] = 0;
+        }
+        output.appendLong(contentHash1 ^ XxHash64.hash(((long) hashes << 32) ^ bits));
+        output.appendLong(contentHash2);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        return words.length * 8 + blockHashes.length * 8;
+    }
+
+    public void writeTo(SliceOutput output)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            Slices.wrappedLongArray(words).getBytes(0, gzip, words.length * 8);
+        }
+        catch (IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        byte[] compressed = out.toByteArray();
+        output.appendInt(hashes);
+        output.appendInt(isWide() ? -words.length : (int) bits);
+        output.appendInt(compressed.length);
+        output.appendBytes(compressed);
+    }
+
+    public static BloomFilterBitSet readFrom(SliceInput input)
+    {
+        int hashes = input.readInt();
+        long bits = readBits(input);
+        int size = input.readInt();
+        if (hashes < 1 || hashes > MAX_HASHES || bits < 64 || (bits & 63) != 0 || bits > MAX_BITS || size < 0 || size > input.available()) {
+            throw new IllegalArgumentException(String.format("Corrupt bitset of %s bits with %s hashes and %s compressed bytes", bits, hashes, size));
+        }
+        byte[] compressed = new byte[size];
+        input.readBytes(compressed);
+
+        // Uncompress straight into the words
+        long[] words = new long[(int) (bits >>> 6)];
+        Slice target = Slices.wrappedLongArray(words);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            target.setBytes(0, gzip, target.length());
+            if (gzip.read() != -1) {
+                throw new IllegalArgumentException("Bitset holds more than " + words.length + " words");
+            }
+        }
+        catch (IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        return new BloomFilterBitSet(hashes, bits, words);
+    }
+
+    private static long readBits(SliceInput input)
+    {
+        int bits = input.readInt();
+        if (bits < 0) {
+            return (long) -bits << 6;
+        }
+        return bits;
+    }
+
+    // Lock free bitset for threads adding to it at the same time, every bit is set with a compare and swap
+    // of its word. Take a snapshot once all threads are done.
+    static final class Concurrent
+    {
+        private final int hashes;
+        private final long bits;
+        private final AtomicLongArray words;
+
+        private Concurrent(int hashes, long bits)
+        {
+            this.hashes = hashes;
+            this.bits = bits;
+            this.words = new AtomicLongArray((int) (bits >>> 6));
+        }
+
+        void put(long hash)
+        {
+            for (int i = 1; i <= hashes; i++) {
+                long bit = position(hash, i, bits);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = words.get(index);
+                while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                    word = words.get(index);
+                }
+            }
+        }
+
+        BloomFilterBitSet snapshot()
+        {
+            long[] copy = new long[words.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = words.get(i);
+            }
+            return new BloomFilterBitSet(hashes, bits, copy);
+        }
+
+        int getSizeInBytes()
+        {
+            return words.length() * 8;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Large filters are stored by the persist service as fixed size chunks of their Base64 form, with a
+// manifest "chunks:<count>:<size>:<chunkSize>:<generation>" under the key. The manifest is only returned
+// to clients that send the chunks header, the chunks are at <url>/chunk/<index>?generation=<generation>.
+// Chunks of a generation never change, they are gone once the filter was persisted again. Manifests of
+// older services have no generation.
+public final class BloomFilterChunks
+{
+    public static final String CHUNKS_HEADER = "X-Bloomfilter-Chunks";
+    public static final int PARALLEL_CHUNKS = 8;
+
+    private static final String MANIFEST_PREFIX = "chunks:";
+    private static final long CHUNK_TIMEOUT_SECONDS = 60;
+
+    private BloomFilterChunks()
+    {
+    }
+
+    public static boolean isManifest(byte[] body)
+    {
+        return body.length > MANIFEST_PREFIX.length() && new String(body, 0, MANIFEST_PREFIX.length(), UTF_8).equals(MANIFEST_PREFIX);
+    }
+
+    // Fetches the chunks with up to PARALLEL_CHUNKS requests at once, each one writing straight into its
+    // part of the value
+    public static byte[] fetch(HttpClient httpClient, String url, byte[] manifest) throws Exception
+    {
+        String[] parts = new String(manifest, UTF_8).trim().split(":");
+        if (parts.length != 4 && parts.length != 5) {
+            throw new IOException("Invalid chunk manifest for " + url);
+        }
+        int count = Integer.parseInt(parts[1]);
+        int size = Integer.parseInt(parts[2]);
+        int chunkSize = Integer.parseInt(parts[3]);
+        String generation = parts.length == 5 ? "?generation=" + parts[4] : "";
+        if (count < 0 || chunkSize <= 0 || (long) count * chunkSize < size || (long) (count - 1) * chunkSize >= size) {
+            throw new IOException("Invalid chunk manifest for " + url);
+        }
+
+        byte[] value = new byte[size];
+        Semaphore permits = new Semaphore(PARALLEL_CHUNKS);
+        CompletableFuture<?>[] chunks = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            permits.acquire();
+            int offset = i * chunkSize;
+            chunks[i] = fetchChunk(httpClient, url + "/chunk/" + i + generation, value, offset, Math.min(chunkSize, size - offset));
+            chunks[i].whenComplete((ignored, throwable) -> permits.release());
+        }
+        try {
+            CompletableFuture.allOf(chunks).get();
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Failed to fetch chunks of " + url, ex.getCause());
+        }
+        return value;
+    }
+
+    private static CompletableFuture<Void> fetchChunk(HttpClient httpClient, String url, byte[] value, int offset, int length)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        int end = offset + length;
+        int[] position = {offset};
+        httpClient.newRequest(url)
+                .method(HttpMethod.GET)
+                .timeout(CHUNK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .onResponseContent((response, content) -> {
+                    int remaining = content.remaining();
+                    if (position[0] + remaining > end) {
+                        response.abort(new IOException("Chunk " + url + " is larger than " + length + " bytes"));
+                        return;
+                    }
+                    content.get(value, position[0], remaining);
+                    position[0] += remaining;
+                })
+                .send(result -> {
+                    if (result.isFailed()) {
+                        future.completeExceptionally(result.getFailure());
+                    }
+                    else if (result.getResponse().getStatus() != 200) {
+                        future.completeExceptionally(new IOException("Unexpected response status " + result.getResponse().getStatus() + " for " + url));
+                    }
+                    else if (position[0] != end) {
+                        future.completeExceptionally(new IOException("Chunk " + url + " is smaller than " + length + " bytes"));
+                    }
+                    else {
+                        future.complete(null);
+                    }
+                });
+        return future;
+    }
+}
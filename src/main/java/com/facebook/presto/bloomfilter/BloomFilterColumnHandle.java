@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ColumnMetadata;
+import com.facebook.presto.spi.type.Type;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
+
+// Columns are the same for every table, a handle is its ordinal
+public final class BloomFilterColumnHandle implements ColumnHandle
+{
+    public static final List<ColumnMetadata> COLUMNS = ImmutableList.of(
+            new ColumnMetadata("name", VARCHAR),
+            new ColumnMetadata("bloom_filter", BloomFilterType.BLOOM_FILTER),
+            new ColumnMetadata("location", VARCHAR),
+            new ColumnMetadata("size", BIGINT));
+
+    private final int ordinal;
+
+    @JsonCreator
+    public BloomFilterColumnHandle(@JsonProperty("ordinal") int ordinal)
+    {
+        this.ordinal = ordinal;
+    }
+
+    @JsonProperty
+    public int getOrdinal()
+    {
+        return ordinal;
+    }
+
+    public String getName()
+    {
+        return COLUMNS.get(ordinal).getName();
+    }
+
+    public Type getType()
+    {
+        return COLUMNS.get(ordinal).getType();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(ordinal);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return ordinal == ((BloomFilterColumnHandle) obj).ordinal;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName();
+    }
+}
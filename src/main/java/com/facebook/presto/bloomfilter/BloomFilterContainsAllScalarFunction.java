@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+@Description("Determines if all elements of the array are in the bloom filter")
+@ScalarFunction(value = "bloom_filter_contains_all")
+public final class BloomFilterContainsAllScalarFunction extends BloomFilterScalarFunctions
+{
+    private BloomFilterContainsAllScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean bloomFilterContainsAll(@SqlNullable @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice, @SqlNullable @SqlType("array(varchar)") Block array)
+    {
+        // The filter is resolved once for the whole array
+        if (array == null) {
+            return false;
+        }
+        for (boolean match : getOrLoadBloomFilter(bloomFilterSlice).mightContain(array)) {
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
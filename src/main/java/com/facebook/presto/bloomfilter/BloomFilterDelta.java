@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceOutput;
+
+// Changed words of a filter against a previous version of it, which the persist service applies to the
+// version it holds. Only filters using LAYOUT_BITSET with the same parameters have a delta.
+//
+// Layout is <count_pre>:<words_pre>:<count>:<words>, where
+//   count: is an int describing the amount of changed words of the bitset
+//   words: are pairs of an int word index and the long xor of the old and the new word
+public final class BloomFilterDelta
+{
+    private BloomFilterDelta()
+    {
+    }
+
+    // Delta from base to next, null if there is none or it is not smaller than maxSize
+    public static Slice diff(BloomFilter base, BloomFilter next, int maxSize)
+    {
+        BloomFilterBitSet basePre = base.getPreBitSet();
+        BloomFilterBitSet nextPre = next.getPreBitSet();
+        if (basePre == null || nextPre == null ||
+                base.getExpectedInsertions() != next.getExpectedInsertions() ||
+                base.getFalsePositivePercentage() != next.getFalsePositivePercentage() ||
+                !basePre.isCompatible(nextPre) ||
+                !base.getBitSet().isCompatible(next.getBitSet())) {
+            return null;
+        }
+        DynamicSliceOutput output = new DynamicSliceOutput(1024);
+        writeWords(output, basePre.getWords(), nextPre.getWords());
+        writeWords(output, base.getBitSet().getWords(), next.getBitSet().getWords());
+        if (output.size() >= maxSize) {
+            return null;
+        }
+        return output.slice();
+    }
+
+    private static void writeWords(SliceOutput output, long[] base, long[] next)
+    {
+        int count = 0;
+        for (int i = 0; i < base.length; i++) {
+            if (base[i] != next[i]) {
+                count++;
+            }
+        }
+        output.appendInt(count);
+        for (int i = 0; i < base.length; i++) {
+            if (base[i] != next[i]) {
+                output.appendInt(i);
+                output.appendLong(base[i] ^ next[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+@Description("Estimates the amount of elements that were added to both bloom filters")
+@ScalarFunction(value = "bloom_filter_estimate_overlap")
+public final class BloomFilterEstimateOverlapScalarFunction extends BloomFilterScalarFunctions
+{
+    private BloomFilterEstimateOverlapScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(StandardTypes.DOUBLE)
+    @SqlNullable
+    public static Double bloomFilterEstimateOverlap(@SqlNullable @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice, @SqlNullable @SqlType(BloomFilterType.TYPE) Slice otherBloomFilterSlice)
+    {
+        if (bloomFilterSlice == null || otherBloomFilterSlice == null) {
+            return null;
+        }
+        return getOrLoadBloomFilter(bloomFilterSlice).estimateOverlap(getOrLoadBloomFilter(otherBloomFilterSlice));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+
+// Builds a filter from key hashes, e.g. a column of bloom_filter_key_hash values materialized once
+@AggregationFunction(value = "bloom_filter_from_hashes")
+public class BloomFilterFromHashesAggregation extends AbstractBloomFilterAggregation
+{
+    private BloomFilterFromHashesAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(StandardTypes.BIGINT) long hash)
+    {
+        BloomFilter bf = getOrCreateBloomFilter(state, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+        bf.putHash(hash);
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(StandardTypes.BIGINT) long hash,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions)
+    {
+        BloomFilter bf = getOrCreateBloomFilter(state, expectedInsertions, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+        bf.putHash(hash);
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(StandardTypes.BIGINT) long hash,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions,
+            @SqlType(StandardTypes.DOUBLE) double falsePositivePercentage)
+    {
+        BloomFilter bf = getOrCreateBloomFilter(state, expectedInsertions, falsePositivePercentage);
+        bf.putHash(hash);
+    }
+}
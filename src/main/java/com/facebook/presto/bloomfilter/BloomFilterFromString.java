@@ -13,11 +13,16 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.function.AggregationFunction;
 import com.facebook.presto.spi.function.InputFunction;
 import com.facebook.presto.spi.function.SqlType;
 import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
 
+import java.util.Base64;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
 import static com.facebook.presto.spi.type.StandardTypes.VARCHAR;
 
 @AggregationFunction(value = "bloom_filter_from_string")
@@ -32,8 +37,14 @@ public class BloomFilterFromString extends AbstractBloomFilterAggregation
             BloomFilterState state,
             @SqlType(VARCHAR) Slice slice)
     {
-        BloomFilter bf = getOrCreateBloomFilter(state, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
-        bf.putAll(BloomFilter.newInstance(slice.getBytes()));
-        state.setBloomFilter(bf);
+        // Strings may come from anywhere, so they are verified like a cast from VARBINARY
+        Slice serialized;
+        try {
+            serialized = BloomFilter.verify(Slices.wrappedBuffer(Base64.getDecoder().decode(slice.getBytes())));
+        }
+        catch (IllegalArgumentException ex) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Not a serialized bloom filter: " + ex.getMessage(), ex);
+        }
+        putAll(state, BloomFilter.newInstance(serialized));
     }
 }
@@ -0,0 +1,262 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.hash.Hashing;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static com.facebook.presto.spi.StandardErrorCode.NOT_SUPPORTED;
+
+// Bit-sliced index over bloom filters with the same shape (hashes and bits), as used by bit-sliced
+// signature files and BitFunnel. Filters are transposed in groups of 64: word b of a group holds bit b
+// of each of its 64 filters. Probing a key ANDs the words at the key's bit positions, which answers the
+// query for a whole group at once, bit j is set when filter 64 * group + j might contain the key.
+//
+// Layout is <hash>:<hashes>:<bits>:<count>:<ids>:<size>:<groups>, where
+//   hash: is a sha256 hash of the index
+//   hashes: is an int describing the amount of bits set per key
+//   bits: is an int describing the amount of bits of every filter
+//   count: is an int describing the amount of filters
+//   ids: are the longs identifying the filters, in order
+//   size: is an int describing the length of the compressed groups
+//   groups: are the gzip compressed words of all groups
+public final class BloomFilterIndex
+{
+    private static final int GROUP_SIZE = 64;
+
+    // Groups are (de)compressed as a whole and all of them end up in one serialized value, so neither may
+    // exceed what a byte array holds
+    private static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private final int hashes;
+    private final int bits;
+    private int count;
+    private long[] ids;
+    private long[][] groups;
+
+    private BloomFilterIndex(int hashes, int bits, int count, long[] ids, long[][] groups)
+    {
+        this.hashes = hashes;
+        this.bits = bits;
+        this.count = count;
+        this.ids = ids;
+        this.groups = groups;
+    }
+
+    public static BloomFilterIndex newInstance(int hashes, int bits)
+    {
+        if (bits * 8L > MAX_BYTES) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Bloom filters of more than " + MAX_BYTES / 8 + " bits can not be indexed");
+        }
+        return new BloomFilterIndex(hashes, bits, 0, new long[GROUP_SIZE], new long[0][]);
+    }
+
+    public static BloomFilterIndex newInstance(BloomFilterBitSet bitSet)
+    {
+        if (bitSet.isWide()) {
+            throw new PrestoException(NOT_SUPPORTED, "Bloom filters of more than " + Integer.MAX_VALUE + " bits can not be indexed");
+        }
+        return newInstance(bitSet.getHashes(), (int) bitSet.getBits());
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public boolean isCompatible(BloomFilterBitSet bitSet)
+    {
+        return hashes == bitSet.getHashes() && bits == bitSet.getBits();
+    }
+
+    public void add(long id, BloomFilterBitSet bitSet)
+    {
+        if (!isCompatible(bitSet)) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only bloom filters with the same parameters can be indexed together");
+        }
+        long[] group = nextColumn(id);
+        long column = 1L << ((count - 1) & (GROUP_SIZE - 1));
+        long[] words = bitSet.getWords();
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                group[(i << 6) + Long.numberOfTrailingZeros(word)] |= column;
+                word &= word - 1;
+            }
+        }
+    }
+
+    public void putAll(BloomFilterIndex other)
+    {
+        if (other.count == 0) {
+            return;
+        }
+        if (hashes != other.hashes || bits != other.bits) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only bloom filters with the same parameters can be indexed together");
+        }
+
+        // Aligned groups are taken over as they are
+        if (count % GROUP_SIZE == 0) {
+            checkSize(groups.length + other.groups.length);
+            int groupCount = groups.length;
+            groups = Arrays.copyOf(groups, groupCount + other.groups.length);
+            System.arraycopy(other.groups, 0, groups, groupCount, other.groups.length);
+            ensureIds(count + other.count);
+            System.arraycopy(other.ids, 0, ids, count, other.count);
+            count += other.count;
+            return;
+        }
+
+        // Otherwise copy column by column
+        for (int j = 0; j < other.count; j++) {
+            long[] otherGroup = other.groups[j / GROUP_SIZE];
+            long otherColumn = 1L << (j & (GROUP_SIZE - 1));
+            long[] group = nextColumn(other.ids[j]);
+            long column = 1L << ((count - 1) & (GROUP_SIZE - 1));
+            for (int bit = 0; bit < bits; bit++) {
+                if ((otherGroup[bit] & otherColumn) != 0) {
+                    group[bit] |= column;
+                }
+            }
+        }
+    }
+
+    // Ids of the filters that might contain the key, in the order the filters were added
+    public long[] match(BloomFilterProbe probe)
+    {
+        int[] positions = probe.getPositions(hashes, bits);
+        long[] result = new long[0];
+        int matches = 0;
+        for (int g = 0; g < groups.length; g++) {
+            long[] group = groups[g];
+            long word = -1L;
+            for (int i = 0; i < positions.length && word != 0; i++) {
+                word &= group[positions[i]];
+            }
+            while (word != 0) {
+                if (matches == result.length) {
+                    result = Arrays.copyOf(result, Math.max(8, matches * 2));
+                }
+                result[matches++] = ids[g * GROUP_SIZE + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return Arrays.copyOf(result, matches);
+    }
+
+    public long estimatedInMemorySize()
+    {
+        return groups.length * (bits * 8L) + ids.length * 8L;
+    }
+
+    private long[] nextColumn(long id)
+    {
+        if (count % GROUP_SIZE == 0) {
+            checkSize(groups.length + 1);
+            groups = Arrays.copyOf(groups, groups.length + 1);
+            groups[groups.length - 1] = new long[bits];
+        }
+        ensureIds(count + 1);
+        ids[count++] = id;
+        return groups[groups.length - 1];
+    }
+
+    private void checkSize(int groupCount)
+    {
+        if (groupCount * (bits * 8L) > MAX_BYTES) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, String.format("An index holds at most %s filters of %s bits", (MAX_BYTES / (bits * 8L)) * GROUP_SIZE, bits));
+        }
+    }
+
+    private void ensureIds(int size)
+    {
+        if (ids.length < size) {
+            ids = Arrays.copyOf(ids, Math.max(size, ids.length * 2));
+        }
+    }
+
+    public Slice serialize()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            for (long[] group : groups) {
+                Slices.wrappedLongArray(group).getBytes(0, gzip, bits * 8);
+            }
+        }
+        catch (IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        byte[] compressed = out.toByteArray();
+
+        DynamicSliceOutput payload = new DynamicSliceOutput(compressed.length + count * 8 + 16);
+        payload.appendInt(hashes);
+        payload.appendInt(bits);
+        payload.appendInt(count);
+        for (int i = 0; i < count; i++) {
+            payload.appendLong(ids[i]);
+        }
+        payload.appendInt(compressed.length);
+        payload.appendBytes(compressed);
+        Slice slice = payload.slice();
+
+        DynamicSliceOutput output = new DynamicSliceOutput(slice.length() + 32);
+        output.writeBytes(Hashing.sha256().hashBytes(slice.getBytes()).asBytes()); // 32 bytes
+        output.appendBytes(slice);
+        return output.slice();
+    }
+
+    public static BloomFilterIndex newInstance(Slice serialized)
+    {
+        BasicSliceInput input = serialized.getInput();
+        input.skip(32);
+        int hashes = input.readInt();
+        int bits = input.readInt();
+        int count = input.readInt();
+        if (bits * 8L > MAX_BYTES) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Invalid bloom filter index");
+        }
+        long[] ids = new long[Math.max(count, GROUP_SIZE)];
+        for (int i = 0; i < count; i++) {
+            ids[i] = input.readLong();
+        }
+        byte[] compressed = new byte[input.readInt()];
+        input.readBytes(compressed);
+
+        // Uncompress straight into the groups
+        long[][] groups = new long[(count + GROUP_SIZE - 1) / GROUP_SIZE][];
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            for (int g = 0; g < groups.length; g++) {
+                groups[g] = new long[bits];
+                Slices.wrappedLongArray(groups[g]).setBytes(0, gzip, bits * 8);
+            }
+        }
+        catch (IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        return new BloomFilterIndex(hashes, bits, count, ids, groups);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.CombineFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.OutputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+// Transposes many bloom filters of the same shape into a bit-sliced index, so a key can be probed
+// against all of them with a few word operations
+@AggregationFunction(value = "bloom_filter_index")
+public class BloomFilterIndexAggregation
+{
+    private BloomFilterIndexAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterIndexState state,
+            @SqlType(StandardTypes.BIGINT) long id,
+            @SqlType(BloomFilterType.TYPE) Slice slice)
+    {
+        BloomFilterBitSet bitSet = BloomFilter.newInstance(slice).getBitSet();
+        if (bitSet == null) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Only filters created by bloom_filter can be indexed");
+        }
+        BloomFilterIndex index = state.getBloomFilterIndex();
+        if (index == null) {
+            index = BloomFilterIndex.newInstance(bitSet);
+            state.setBloomFilterIndex(index);
+        }
+        long before = index.estimatedInMemorySize();
+        index.add(id, bitSet);
+        state.addMemoryUsage(index.estimatedInMemorySize() - before);
+    }
+
+    @CombineFunction
+    public static void combine(BloomFilterIndexState state, BloomFilterIndexState otherState)
+    {
+        BloomFilterIndex other = otherState.getBloomFilterIndex();
+        if (other == null) {
+            return;
+        }
+        BloomFilterIndex index = state.getBloomFilterIndex();
+        if (index == null) {
+            state.setBloomFilterIndex(other);
+            state.addMemoryUsage(other.estimatedInMemorySize());
+            return;
+        }
+        long before = index.estimatedInMemorySize();
+        index.putAll(other);
+        state.addMemoryUsage(index.estimatedInMemorySize() - before);
+    }
+
+    @OutputFunction(BloomFilterIndexType.TYPE)
+    public static void output(BloomFilterIndexState state, BlockBuilder out)
+    {
+        BloomFilterIndex index = state.getBloomFilterIndex();
+        if (index == null) {
+            out.appendNull();
+        }
+        else {
+            BloomFilterIndexType.BLOOM_FILTER_INDEX.writeSlice(out, index.serialize());
+        }
+    }
+}
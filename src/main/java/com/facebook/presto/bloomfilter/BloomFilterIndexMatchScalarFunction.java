@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.block.BlockBuilderStatus;
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import io.airlift.slice.Slice;
+
+import javax.annotation.Nullable;
+
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+
+@Description("Returns the ids of the indexed bloom filters that might contain the element")
+@Nullable
+@ScalarFunction(value = "bloom_filter_index_match")
+public final class BloomFilterIndexMatchScalarFunction
+        extends BloomFilterScalarFunctions
+{
+    private static final Cache<HashCode, BloomFilterIndex> INDEX_CACHE = CacheBuilder.newBuilder().maximumSize(10).build();
+
+    private BloomFilterIndexMatchScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType("array(bigint)")
+    @Nullable
+    @SqlNullable
+    public static Block bloomFilterIndexMatch(@SqlType(BloomFilterIndexType.TYPE) Slice indexSlice, @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice slice)
+    {
+        if (slice == null) {
+            return null;
+        }
+
+        // From cache
+        HashCode hash = BloomFilter.readHash(indexSlice);
+        BloomFilterIndex index = INDEX_CACHE.getIfPresent(hash);
+        if (index == null) {
+            index = BloomFilterIndex.newInstance(indexSlice);
+            INDEX_CACHE.put(hash, index);
+        }
+
+        long[] ids = index.match(new BloomFilterProbe(slice));
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(new BlockBuilderStatus(), ids.length);
+        for (long id : ids) {
+            BIGINT.writeLong(blockBuilder, id);
+        }
+        return blockBuilder.build();
+    }
+}
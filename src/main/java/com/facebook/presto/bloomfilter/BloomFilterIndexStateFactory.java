@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.array.ObjectBigArray;
+import com.facebook.presto.spi.function.AccumulatorStateFactory;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+
+import java.util.Objects;
+
+public class BloomFilterIndexStateFactory implements AccumulatorStateFactory<BloomFilterIndexState>
+{
+    @Override
+    public BloomFilterIndexState createSingleState()
+    {
+        return new SingleBloomFilterIndexState();
+    }
+
+    @Override
+    public Class<? extends BloomFilterIndexState> getSingleStateClass()
+    {
+        return SingleBloomFilterIndexState.class;
+    }
+
+    @Override
+    public BloomFilterIndexState createGroupedState()
+    {
+        return new GroupedBloomFilterIndexState();
+    }
+
+    @Override
+    public Class<? extends BloomFilterIndexState> getGroupedStateClass()
+    {
+        return GroupedBloomFilterIndexState.class;
+    }
+
+    public static class GroupedBloomFilterIndexState
+            implements GroupedAccumulatorState, BloomFilterIndexState
+    {
+        private final ObjectBigArray<BloomFilterIndex> indexes = new ObjectBigArray<>();
+        private long groupId;
+        private long size;
+
+        @Override
+        public void ensureCapacity(long size)
+        {
+            indexes.ensureCapacity(size);
+        }
+
+        @Override
+        public void setGroupId(long groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public BloomFilterIndex getBloomFilterIndex()
+        {
+            return indexes.get(groupId);
+        }
+
+        @Override
+        public void setBloomFilterIndex(BloomFilterIndex value)
+        {
+            Objects.requireNonNull(value, "value is null");
+            indexes.set(groupId, value);
+        }
+
+        @Override
+        public void addMemoryUsage(long value)
+        {
+            size += value;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return size + indexes.sizeOf();
+        }
+    }
+
+    public static class SingleBloomFilterIndexState
+            implements BloomFilterIndexState
+    {
+        private BloomFilterIndex index;
+
+        @Override
+        public BloomFilterIndex getBloomFilterIndex()
+        {
+            return index;
+        }
+
+        @Override
+        public void setBloomFilterIndex(BloomFilterIndex value)
+        {
+            index = value;
+        }
+
+        @Override
+        public void addMemoryUsage(long value)
+        {
+            // noop
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            if (index == null) {
+                return 0;
+            }
+            return index.estimatedInMemorySize();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+@Description("Key hash of the element, as used by bloom_filter_from_hashes and bloom_filter_contains_hash")
+@ScalarFunction(value = "bloom_filter_key_hash")
+public final class BloomFilterKeyHashScalarFunction extends BloomFilterScalarFunctions
+{
+    private BloomFilterKeyHashScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(StandardTypes.BIGINT)
+    public static long bloomFilterKeyHash(@SqlType(StandardTypes.VARCHAR) Slice slice)
+    {
+        return BloomFilter.getKeyHash(slice);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.block.BlockBuilderStatus;
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import javax.annotation.Nullable;
+
+import static com.facebook.presto.bloomfilter.BloomFilterType.BLOOM_FILTER;
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+
+@Description("Returns the (1-based) positions of the bloom filters in the array that might contain the element")
+@Nullable
+@ScalarFunction(value = "bloom_filter_match")
+public final class BloomFilterMatchScalarFunction
+        extends BloomFilterScalarFunctions
+{
+    private BloomFilterMatchScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType("array(bigint)")
+    @Nullable
+    @SqlNullable
+    public static Block bloomFilterMatch(@SqlType("array(" + BloomFilterType.TYPE + ")") Block bloomFilters, @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice slice)
+    {
+        if (slice == null) {
+            return null;
+        }
+
+        // Hash once, filters with the same parameters share the bit positions
+        BloomFilterProbe probe = new BloomFilterProbe(slice);
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(new BlockBuilderStatus(), bloomFilters.getPositionCount());
+        for (int i = 0; i < bloomFilters.getPositionCount(); i++) {
+            if (bloomFilters.isNull(i)) {
+                continue;
+            }
+            if (getOrLoadBloomFilter(BLOOM_FILTER.getSlice(bloomFilters, i)).mightContain(probe)) {
+                BIGINT.writeLong(blockBuilder, i + 1);
+            }
+        }
+        return blockBuilder.build();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import io.airlift.slice.Slice;
+
+// Merges stored filters, e.g. daily filters into a monthly one. Only the first input is deserialized, the
+// others are OR-ed into it from their serialized form.
+@AggregationFunction(value = "bloom_filter_merge")
+public class BloomFilterMergeAggregation extends AbstractBloomFilterAggregation
+{
+    private BloomFilterMergeAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(BloomFilterType.TYPE) Slice slice)
+    {
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
+            putAll(state, BloomFilter.newInstance(slice));
+        }
+        else {
+            state.setBloomFilter(bf.putAll(slice));
+        }
+    }
+}
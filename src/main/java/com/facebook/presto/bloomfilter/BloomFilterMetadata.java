@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ColumnMetadata;
+import com.facebook.presto.spi.ConnectorSession;
+import com.facebook.presto.spi.ConnectorTableHandle;
+import com.facebook.presto.spi.ConnectorTableLayout;
+import com.facebook.presto.spi.ConnectorTableLayoutHandle;
+import com.facebook.presto.spi.ConnectorTableLayoutResult;
+import com.facebook.presto.spi.ConnectorTableMetadata;
+import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.SchemaTableName;
+import com.facebook.presto.spi.SchemaTablePrefix;
+import com.facebook.presto.spi.connector.ConnectorMetadata;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class BloomFilterMetadata implements ConnectorMetadata
+{
+    public static final String SCHEMA_NAME = "default";
+
+    private final String connectorId;
+    private final BloomFilterTableSource tableSource;
+
+    public BloomFilterMetadata(String connectorId, BloomFilterTableSource tableSource)
+    {
+        this.connectorId = connectorId;
+        this.tableSource = tableSource;
+    }
+
+    @Override
+    public List<String> listSchemaNames(ConnectorSession session)
+    {
+        return ImmutableList.of(SCHEMA_NAME);
+    }
+
+    @Override
+    public BloomFilterTableHandle getTableHandle(ConnectorSession session, SchemaTableName tableName)
+    {
+        if (!SCHEMA_NAME.equals(tableName.getSchemaName())) {
+            return null;
+        }
+        String location = tableSource.listTables().get(tableName.getTableName());
+        if (location == null) {
+            return null;
+        }
+        return new BloomFilterTableHandle(connectorId, tableName, location);
+    }
+
+    @Override
+    public List<ConnectorTableLayoutResult> getTableLayouts(ConnectorSession session, ConnectorTableHandle table, Constraint<ColumnHandle> constraint, Optional<Set<ColumnHandle>> desiredColumns)
+    {
+        ConnectorTableLayout layout = new ConnectorTableLayout(new BloomFilterTableLayoutHandle((BloomFilterTableHandle) table));
+        return ImmutableList.of(new ConnectorTableLayoutResult(layout, constraint.getSummary()));
+    }
+
+    @Override
+    public ConnectorTableLayout getTableLayout(ConnectorSession session, ConnectorTableLayoutHandle handle)
+    {
+        return new ConnectorTableLayout(handle);
+    }
+
+    @Override
+    public ConnectorTableMetadata getTableMetadata(ConnectorSession session, ConnectorTableHandle table)
+    {
+        return new ConnectorTableMetadata(((BloomFilterTableHandle) table).getTableName(), BloomFilterColumnHandle.COLUMNS);
+    }
+
+    @Override
+    public List<SchemaTableName> listTables(ConnectorSession session, String schemaNameOrNull)
+    {
+        if (schemaNameOrNull != null && !SCHEMA_NAME.equals(schemaNameOrNull)) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<SchemaTableName> tables = ImmutableList.builder();
+        for (String table : tableSource.listTables().keySet()) {
+            tables.add(new SchemaTableName(SCHEMA_NAME, table));
+        }
+        return tables.build();
+    }
+
+    @Override
+    public Map<String, ColumnHandle> getColumnHandles(ConnectorSession session, ConnectorTableHandle tableHandle)
+    {
+        ImmutableMap.Builder<String, ColumnHandle> columnHandles = ImmutableMap.builder();
+        for (int i = 0; i < BloomFilterColumnHandle.COLUMNS.size(); i++) {
+            columnHandles.put(BloomFilterColumnHandle.COLUMNS.get(i).getName(), new BloomFilterColumnHandle(i));
+        }
+        return columnHandles.build();
+    }
+
+    @Override
+    public ColumnMetadata getColumnMetadata(ConnectorSession session, ConnectorTableHandle tableHandle, ColumnHandle columnHandle)
+    {
+        return BloomFilterColumnHandle.COLUMNS.get(((BloomFilterColumnHandle) columnHandle).getOrdinal());
+    }
+
+    @Override
+    public Map<SchemaTableName, List<ColumnMetadata>> listTableColumns(ConnectorSession session, SchemaTablePrefix prefix)
+    {
+        ImmutableMap.Builder<SchemaTableName, List<ColumnMetadata>> columns = ImmutableMap.builder();
+        for (SchemaTableName table : listTables(session, prefix.getSchemaName())) {
+            if (prefix.getTableName() == null || prefix.getTableName().equals(table.getTableName())) {
+                columns.put(table, BloomFilterColumnHandle.COLUMNS);
+            }
+        }
+        return columns.build();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.function.ScalarOperator;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_CAST_ARGUMENT;
+import static com.facebook.presto.spi.function.OperatorType.CAST;
+
+// Casts between a filter and its serialized form, e.g. to store filters in a VARBINARY column. Filters are
+// written as is, only references to filters resident on this worker are resolved as they mean nothing
+// anywhere else. Bytes read back are verified, as their hash keys the filter cache.
+public final class BloomFilterOperators
+{
+    private BloomFilterOperators()
+    {
+    }
+
+    @ScalarOperator(CAST)
+    @SqlType(StandardTypes.VARBINARY)
+    public static Slice castToBinary(@SqlType(BloomFilterType.TYPE) Slice slice)
+    {
+        if (BloomFilter.isReference(slice)) {
+            return BloomFilter.newInstance(slice).serialize();
+        }
+        return slice;
+    }
+
+    @ScalarOperator(CAST)
+    @SqlType(BloomFilterType.TYPE)
+    public static Slice castFromBinary(@SqlType(StandardTypes.VARBINARY) Slice slice)
+    {
+        try {
+            return BloomFilter.verify(slice);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new PrestoException(INVALID_CAST_ARGUMENT, "Not a serialized bloom filter: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+
+import javax.annotation.Nullable;
+
+@Description("Returns the partition of this element in a partitioned bloom filter")
+@Nullable
+@ScalarFunction(value = "bloom_filter_partition")
+public final class BloomFilterPartitionScalarFunction
+        extends BloomFilterScalarFunctions
+{
+    private BloomFilterPartitionScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(StandardTypes.BIGINT)
+    @Nullable
+    @SqlNullable
+    public static Long bloomFilterPartition(@SqlNullable @SqlType(StandardTypes.VARCHAR) Slice slice, @SqlType(StandardTypes.BIGINT) long partitions)
+    {
+        if (slice == null) {
+            return null;
+        }
+        return (long) PartitionedBloomFilter.partition(XxHash64.hash(slice), PartitionedBloomFilter.checkPartitions(partitions));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import static com.facebook.presto.spi.type.StandardTypes.VARCHAR;
+
+@AggregationFunction(value = "bloom_filter_partitioned")
+public class BloomFilterPartitionedAggregation extends AbstractBloomFilterAggregation
+{
+    private BloomFilterPartitionedAggregation()
+    {
+    }
+
+    public static BloomFilter getOrCreatePartitionedBloomFilter(BloomFilterState state, long expectedInsertions, double falsePositivePercentage, long partitions)
+    {
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
+            bf = BloomFilter.newPartitionedInstance(expectedInsertions, falsePositivePercentage, PartitionedBloomFilter.checkPartitions(partitions));
+            state.setBloomFilter(bf);
+            state.addMemoryUsage(bf.estimatedInMemorySize());
+        }
+        return bf;
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(VARCHAR) Slice slice,
+            @SqlType(StandardTypes.BIGINT) long partitions)
+    {
+        input(state, slice, partitions, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(VARCHAR) Slice slice,
+            @SqlType(StandardTypes.BIGINT) long partitions,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions)
+    {
+        input(state, slice, partitions, expectedInsertions, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterState state,
+            @SqlType(VARCHAR) Slice slice,
+            @SqlType(StandardTypes.BIGINT) long partitions,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions,
+            @SqlType(StandardTypes.DOUBLE) double falsePositivePercentage)
+    {
+        BloomFilter bf = getOrCreatePartitionedBloomFilter(state, expectedInsertions, falsePositivePercentage, partitions);
+        // Partitions are allocated on first use, so the memory size grows with the partitions that are hit
+        int before = bf.estimatedInMemorySize();
+        bf.put(slice);
+        state.addMemoryUsage(bf.estimatedInMemorySize() - before);
+    }
+}
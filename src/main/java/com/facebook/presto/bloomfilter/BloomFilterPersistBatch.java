@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceOutput;
+
+import java.util.Base64;
+
+import static com.facebook.presto.bloomfilter.BloomFilterUploader.UPLOADER;
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Filters waiting to be persisted in a single multi-key request. The request body is a sequence of frames
+// <key_size>:<key>:<value_size>:<value>, where sizes are little endian ints and the value is the Base64
+// serialized filter, as for a single PUT.
+//
+// Layout is <url_size>:<url>:<persisted>:<pending>:<frames_size>:<frames>
+public class BloomFilterPersistBatch
+{
+    public static final int MAX_BATCH_FILTERS = 1000;
+    public static final int MAX_BATCH_BYTES = 16 * 1024 * 1024;
+
+    private final String url;
+    private long persisted;
+    private int pending;
+    private DynamicSliceOutput frames;
+
+    public BloomFilterPersistBatch(String url)
+    {
+        this(url, 0, 0, new DynamicSliceOutput(1024));
+    }
+
+    private BloomFilterPersistBatch(String url, long persisted, int pending, DynamicSliceOutput frames)
+    {
+        this.url = url;
+        this.persisted = persisted;
+        this.pending = pending;
+        this.frames = frames;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    // Amount of filters persisted and pending
+    public long getCount()
+    {
+        return persisted + pending;
+    }
+
+    public void add(Slice key, Slice serialized)
+    {
+        byte[] value = Base64.getEncoder().encode(serialized.getBytes());
+        frames.appendInt(key.length());
+        frames.appendBytes(key);
+        frames.appendInt(value.length);
+        frames.appendBytes(value);
+        pending++;
+        flushIfFull();
+    }
+
+    public void addAll(BloomFilterPersistBatch other)
+    {
+        checkUrl(other.url);
+        persisted += other.persisted;
+        frames.appendBytes(other.frames.slice());
+        pending += other.pending;
+        flushIfFull();
+    }
+
+    // A batch is sent in requests to a single url
+    public void checkUrl(String url)
+    {
+        if (!this.url.equals(url)) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "All filters of a batch must be persisted to the same url, got " + url + " and " + this.url);
+        }
+    }
+
+    public void flush()
+    {
+        if (pending == 0) {
+            return;
+        }
+        UPLOADER.uploadAndWait(url, frames.slice().getBytes());
+        persisted += pending;
+        pending = 0;
+        frames = new DynamicSliceOutput(1024);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        return frames.size() + url.length() * 2;
+    }
+
+    private void flushIfFull()
+    {
+        if (pending >= MAX_BATCH_FILTERS || frames.size() >= MAX_BATCH_BYTES) {
+            flush();
+        }
+    }
+
+    public Slice serialize()
+    {
+        byte[] urlBytes = url.getBytes(UTF_8);
+        Slice pendingFrames = frames.slice();
+        SliceOutput output = new DynamicSliceOutput(urlBytes.length + pendingFrames.length() + 20);
+        output.appendInt(urlBytes.length);
+        output.appendBytes(urlBytes);
+        output.appendLong(persisted);
+        output.appendInt(pending);
+        output.appendInt(pendingFrames.length());
+        output.appendBytes(pendingFrames);
+        return output.slice();
+    }
+
+    public static BloomFilterPersistBatch newInstance(Slice serialized)
+    {
+        BasicSliceInput input = serialized.getInput();
+        byte[] url = new byte[input.readInt()];
+        input.readBytes(url);
+        long persisted = input.readLong();
+        int pending = input.readInt();
+        int size = input.readInt();
+        DynamicSliceOutput frames = new DynamicSliceOutput(Math.max(size, 1024));
+        frames.appendBytes(input.readSlice(size));
+        return new BloomFilterPersistBatch(new String(url, UTF_8), persisted, pending, frames);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.CombineFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.OutputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+
+// Persists many filters with few requests, filters are sent in multi-key requests of up to
+// MAX_BATCH_FILTERS filters as soon as a batch is full. All filters of a group go to the same url.
+// Returns the amount of persisted filters.
+@AggregationFunction(value = "bloom_filter_persist_batch")
+public class BloomFilterPersistBatchAggregation
+{
+    private BloomFilterPersistBatchAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            BloomFilterPersistBatchState state,
+            @SqlType(StandardTypes.VARCHAR) Slice key,
+            @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice,
+            @SqlType(StandardTypes.VARCHAR) Slice urlSlice)
+    {
+        String url = urlSlice.toStringUtf8();
+        BloomFilterPersistBatch batch = state.getPersistBatch();
+        if (batch == null) {
+            batch = new BloomFilterPersistBatch(url);
+            state.setPersistBatch(batch);
+        }
+        batch.checkUrl(url);
+
+        // Only references have to be resolved, other filters are sent as they are
+        Slice serialized = bloomFilterSlice;
+        if (BloomFilter.isReference(serialized)) {
+            serialized = BloomFilter.newInstance(serialized).serialize();
+        }
+        int before = batch.estimatedInMemorySize();
+        batch.add(key, serialized);
+        state.addMemoryUsage(batch.estimatedInMemorySize() - before);
+    }
+
+    @CombineFunction
+    public static void combine(BloomFilterPersistBatchState state, BloomFilterPersistBatchState otherState)
+    {
+        BloomFilterPersistBatch other = otherState.getPersistBatch();
+        if (other == null) {
+            return;
+        }
+        BloomFilterPersistBatch batch = state.getPersistBatch();
+        if (batch == null) {
+            state.setPersistBatch(other);
+            state.addMemoryUsage(other.estimatedInMemorySize());
+            return;
+        }
+        int before = batch.estimatedInMemorySize();
+        batch.addAll(other);
+        state.addMemoryUsage(batch.estimatedInMemorySize() - before);
+    }
+
+    @OutputFunction(StandardTypes.BIGINT)
+    public static void output(BloomFilterPersistBatchState state, BlockBuilder out)
+    {
+        BloomFilterPersistBatch batch = state.getPersistBatch();
+        if (batch == null) {
+            BIGINT.writeLong(out, 0);
+            return;
+        }
+        batch.flush();
+        BIGINT.writeLong(out, batch.getCount());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.array.ObjectBigArray;
+import com.facebook.presto.spi.function.AccumulatorStateFactory;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+
+import java.util.Objects;
+
+public class BloomFilterPersistBatchStateFactory implements AccumulatorStateFactory<BloomFilterPersistBatchState>
+{
+    @Override
+    public BloomFilterPersistBatchState createSingleState()
+    {
+        return new SingleBloomFilterPersistBatchState();
+    }
+
+    @Override
+    public Class<? extends BloomFilterPersistBatchState> getSingleStateClass()
+    {
+        return SingleBloomFilterPersistBatchState.class;
+    }
+
+    @Override
+    public BloomFilterPersistBatchState createGroupedState()
+    {
+        return new GroupedBloomFilterPersistBatchState();
+    }
+
+    @Override
+    public Class<? extends BloomFilterPersistBatchState> getGroupedStateClass()
+    {
+        return GroupedBloomFilterPersistBatchState.class;
+    }
+
+    public static class GroupedBloomFilterPersistBatchState
+            implements GroupedAccumulatorState, BloomFilterPersistBatchState
+    {
+        private final ObjectBigArray<BloomFilterPersistBatch> batches = new ObjectBigArray<>();
+        private long groupId;
+        private long size;
+
+        @Override
+        public void ensureCapacity(long size)
+        {
+            batches.ensureCapacity(size);
+        }
+
+        @Override
+        public void setGroupId(long groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public BloomFilterPersistBatch getPersistBatch()
+        {
+            return batches.get(groupId);
+        }
+
+        @Override
+        public void setPersistBatch(BloomFilterPersistBatch value)
+        {
+            Objects.requireNonNull(value, "value is null");
+            batches.set(groupId, value);
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            size += value;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return size + batches.sizeOf();
+        }
+    }
+
+    public static class SingleBloomFilterPersistBatchState
+            implements BloomFilterPersistBatchState
+    {
+        private BloomFilterPersistBatch batch;
+
+        @Override
+        public BloomFilterPersistBatch getPersistBatch()
+        {
+            return batch;
+        }
+
+        @Override
+        public void setPersistBatch(BloomFilterPersistBatch value)
+        {
+            batch = value;
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            // noop
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            if (batch == null) {
+                return 0;
+            }
+            return batch.estimatedInMemorySize();
+        }
+    }
+}
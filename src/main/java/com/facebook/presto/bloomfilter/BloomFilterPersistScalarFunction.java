@@ -13,23 +13,34 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.function.Description;
 import com.facebook.presto.spi.function.ScalarFunction;
 import com.facebook.presto.spi.function.SqlNullable;
 import com.facebook.presto.spi.function.SqlType;
 import com.facebook.presto.spi.type.StandardTypes;
+import com.google.common.io.BaseEncoding;
 import io.airlift.slice.Slice;
-import org.eclipse.jetty.client.api.Request;
-import org.eclipse.jetty.client.util.StringContentProvider;
+import io.airlift.slice.Slices;
+import io.airlift.stats.TimeStat;
 
 import javax.annotation.Nullable;
 
+import java.util.Base64;
+
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+import static com.facebook.presto.bloomfilter.BloomFilterUploader.UPLOADER;
+
 @Description(value = "Persist a bloom filter to the persist service over HTTP")
 @Nullable
 @ScalarFunction(value = "bloom_filter_persist")
 public final class BloomFilterPersistScalarFunction
         extends BloomFilterScalarFunctions
 {
+    // Deltas larger than this fraction of the serialized filter are not worth it
+    private static final int MAX_DELTA_RATIO = 4;
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
     private BloomFilterPersistScalarFunction()
     {
         log.warn("New " + getClass().getSimpleName() + " should never be run");
@@ -41,10 +52,15 @@ public final class BloomFilterPersistScalarFunction
     public static Boolean bloomFilterPersist(@SqlNullable @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice, @SqlType(StandardTypes.VARCHAR) Slice urlSlice) throws Exception
     {
         // Nothing todo
-        if (urlSlice == null) {
+        if (urlSlice == null || bloomFilterSlice == null) {
             return true;
         }
-        BloomFilter bf = getOrLoadBloomFilter(bloomFilterSlice);
+
+        // Upload the serialized filter as is, only references have to be resolved
+        Slice serialized = bloomFilterSlice;
+        if (BloomFilter.isReference(serialized)) {
+            serialized = getOrLoadBloomFilter(serialized).serialize();
+        }
 
         // Persist
         // we do not try catch here to make sure that errors are communicated clearly to the client
@@ -54,11 +70,43 @@ public final class BloomFilterPersistScalarFunction
             log.warn("Http client was not started, trying to start");
             HTTP_CLIENT.start();
         }
-        Request post = HTTP_CLIENT.POST(url);
-        post.content(new StringContentProvider(new String(bf.toBase64())));
-        post.method("PUT");
-        post.send();
-        log.info("Persisted " + bf.toString() + " " + url);
+        try (TimeStat.BlockTimer ignored = STATS.getPersistTime().time()) {
+            if (!persistDelta(url, serialized)) {
+                UPLOADER.uploadAndWait(url, Base64.getEncoder().encode(serialized.getBytes()));
+            }
+        }
+        catch (PrestoException ex) {
+            STATS.getPersistFailures().update(1);
+            throw ex;
+        }
+        log.info("Persisted " + url);
+
+        // The persisted version is the base of the next delta to this url
+        BloomFilterRegistry.register(url, Slices.copyOf(serialized));
+        return true;
+    }
+
+    // Sends only the changed words when this worker holds the version the service has, the service
+    // rejects the delta if its version has a different hash
+    private static boolean persistDelta(String url, Slice serialized)
+    {
+        Slice base = url.contains("?") ? null : BloomFilterRegistry.getIfPresent(url);
+        if (base == null) {
+            return false;
+        }
+        Slice delta = BloomFilterDelta.diff(getOrLoadBloomFilter(base), getOrLoadBloomFilter(serialized), serialized.length() / MAX_DELTA_RATIO);
+        if (delta == null) {
+            return false;
+        }
+        String deltaUrl = url + "?mode=delta&base=" + HEX.encode(base.getBytes(0, 32)) + "&hash=" + HEX.encode(serialized.getBytes(0, 32));
+        try {
+            UPLOADER.uploadAndWait(deltaUrl, delta.getBytes());
+        }
+        catch (PrestoException ex) {
+            log.warn("Persisting the delta to " + url + " failed, persisting the whole filter: " + ex.getMessage());
+            return false;
+        }
+        STATS.getPersistDeltas().update(1);
         return true;
     }
 }
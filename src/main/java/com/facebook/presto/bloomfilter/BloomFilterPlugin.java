@@ -14,6 +14,7 @@
 package com.facebook.presto.bloomfilter;
 
 import com.facebook.presto.spi.Plugin;
+import com.facebook.presto.spi.connector.ConnectorFactory;
 import com.facebook.presto.spi.type.ParametricType;
 import com.facebook.presto.spi.type.Type;
 import com.facebook.presto.spi.type.TypeManager;
@@ -31,6 +32,11 @@ public class BloomFilterPlugin
 {
     private static final Logger log = Logger.get(BloomFilterPlugin.class);
 
+    public BloomFilterPlugin()
+    {
+        BloomFilterStats.export();
+    }
+
     @Inject
     public void setTypeManager(TypeManager typeManager)
     {
@@ -44,16 +50,45 @@ public class BloomFilterPlugin
         log.info("Returning bloomfilter functions");
         return ImmutableSet.<Class<?>>builder()
                 .add(BloomFilterContainsScalarFunction.class)
+                .add(BloomFilterContainsAnyScalarFunction.class)
+                .add(BloomFilterContainsAllScalarFunction.class)
+                .add(BloomFilterContainsHashScalarFunction.class)
+                .add(BloomFilterKeyHashScalarFunction.class)
+                .add(BloomFilterCountMatchesScalarFunction.class)
+                .add(BloomFilterMatchScalarFunction.class)
                 .add(BloomFilterPersistScalarFunction.class)
                 .add(BloomFilterToStringScalarFunction.class)
                 .add(BloomFilterGetExpectedInsertionsScalarFunction.class)
                 .add(BloomFilterGetFalsePositivePercentageScalarFunction.class)
+                .add(BloomFilterStatsScalarFunction.class)
+                .add(BloomFilterUnionScalarFunction.class)
+                .add(BloomFilterIntersectScalarFunction.class)
+                .add(BloomFilterEstimateOverlapScalarFunction.class)
+                .add(BloomFilterOperators.class)
                 .add(BloomFilterAggregation.class)
+                .add(BloomFilterFromHashesAggregation.class)
+                .add(SharedBloomFilterAggregation.class)
                 .add(BloomFilterFromString.class)
                 .add(BloomFilterLoad.class)
+                .add(StaticFilterAggregation.class)
+                .add(BloomFilterPartitionedAggregation.class)
+                .add(BloomFilterAssembleAggregation.class)
+                .add(BloomFilterMergeAggregation.class)
+                .add(BloomFilterPartitionScalarFunction.class)
+                .add(BloomFilterIndexAggregation.class)
+                .add(BloomFilterIndexMatchScalarFunction.class)
+                .add(BloomFilterPersistBatchAggregation.class)
+                .add(BloomFilterRemoteContainsScalarFunction.class)
                 .build();
     }
 
+    @Override
+    public Iterable<ConnectorFactory> getConnectorFactories()
+    {
+        log.info("Returning bloomfilter connector factory");
+        return ImmutableList.of(new BloomFilterConnectorFactory());
+    }
+
     @Override
     public Iterable<ParametricType> getParametricTypes()
     {
@@ -64,7 +99,7 @@ public class BloomFilterPlugin
     @Override
     public Iterable<Type> getTypes()
     {
-        log.info("Returning bloomfilter type");
-        return ImmutableList.of(BloomFilterType.BLOOM_FILTER);
+        log.info("Returning bloomfilter types");
+        return ImmutableList.of(BloomFilterType.BLOOM_FILTER, BloomFilterIndexType.BLOOM_FILTER_INDEX);
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Element to probe many bloom filters with, the element is hashed once and the bit positions are
+// computed once for every distinct bitset shape (amount of hashes and bits)
+public final class BloomFilterProbe
+{
+    private final Slice key;
+    private final long hash;
+    private final Map<Long, int[]> positions = new HashMap<>();
+
+    public BloomFilterProbe(Slice key)
+    {
+        this.key = key;
+        this.hash = XxHash64.hash(key);
+    }
+
+    public Slice getKey()
+    {
+        return key;
+    }
+
+    public long getHash()
+    {
+        return hash;
+    }
+
+    // Only for bitsets that are not wide, those are probed by hash
+    public int[] getPositions(BloomFilterBitSet bitSet)
+    {
+        return getPositions(bitSet.getHashes(), (int) bitSet.getBits());
+    }
+
+    public int[] getPositions(int hashes, int bits)
+    {
+        long shape = ((long) bits << 32) | hashes;
+        int[] result = positions.get(shape);
+        if (result == null) {
+            result = BloomFilterBitSet.getPositions(hash, hashes, bits);
+            positions.put(shape, result);
+        }
+        return result;
+    }
+}
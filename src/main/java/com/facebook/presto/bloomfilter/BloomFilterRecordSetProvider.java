@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ConnectorSession;
+import com.facebook.presto.spi.ConnectorSplit;
+import com.facebook.presto.spi.InMemoryRecordSet;
+import com.facebook.presto.spi.RecordSet;
+import com.facebook.presto.spi.connector.ConnectorRecordSetProvider;
+import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BloomFilterRecordSetProvider implements ConnectorRecordSetProvider
+{
+    @Override
+    public RecordSet getRecordSet(ConnectorTransactionHandle transactionHandle, ConnectorSession session, ConnectorSplit split, List<? extends ColumnHandle> columns)
+    {
+        BloomFilterTableHandle table = ((BloomFilterSplit) split).getTable();
+
+        // Loading the filter here makes it resident on this worker
+        Slice serialized = BloomFilterRegistry.get(table.getLocation());
+
+        List<Type> types = new ArrayList<>();
+        List<Object> row = new ArrayList<>();
+        for (ColumnHandle column : columns) {
+            BloomFilterColumnHandle handle = (BloomFilterColumnHandle) column;
+            types.add(handle.getType());
+            switch (handle.getName()) {
+                case "name":
+                    row.add(table.getTableName().getTableName());
+                    break;
+                case "bloom_filter":
+                    row.add(BloomFilter.newReference(table.getLocation()));
+                    break;
+                case "location":
+                    row.add(table.getLocation());
+                    break;
+                case "size":
+                    row.add((long) serialized.length());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column " + handle.getName());
+            }
+        }
+        return new InMemoryRecordSet(types, ImmutableList.of(row));
+    }
+}
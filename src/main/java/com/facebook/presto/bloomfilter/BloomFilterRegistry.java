@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.airlift.log.Logger;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+import static com.facebook.presto.spi.StandardErrorCode.NOT_FOUND;
+import static io.airlift.units.DataSize.Unit.GIGABYTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+// Serialized filters that are resident on this worker, by location. A location is either a file: uri or
+// the url of the filter in the persist service. Filters are loaded once and then only referenced, see
+// BloomFilter.newReference.
+//
+// Filters are loaded again once they were resident for the configured ttl, so filters that are persisted
+// again are picked up. References carry the hash of the filter they were created for, a resident filter
+// with another hash is loaded again when resolving them.
+public final class BloomFilterRegistry
+{
+    public static final String MAX_RESIDENT_SIZE_PROPERTY = "bloomfilter.max-resident-size";
+    public static final String RESIDENT_TTL_PROPERTY = "bloomfilter.resident-ttl";
+
+    private static final DataSize DEFAULT_MAX_RESIDENT_SIZE = new DataSize(1, GIGABYTE);
+    private static final Duration DEFAULT_RESIDENT_TTL = new Duration(10, MINUTES);
+
+    private static volatile Cache<String, Slice> filters = newCache(DEFAULT_MAX_RESIDENT_SIZE, DEFAULT_RESIDENT_TTL);
+
+    private static final Logger log = Logger.get(BloomFilterRegistry.class);
+
+    private BloomFilterRegistry()
+    {
+    }
+
+    // Applies the catalog properties of the connector, resident filters are loaded again afterwards
+    public static void configure(Map<String, String> config)
+    {
+        String maxResidentSize = config.get(MAX_RESIDENT_SIZE_PROPERTY);
+        String residentTtl = config.get(RESIDENT_TTL_PROPERTY);
+        if (maxResidentSize == null && residentTtl == null) {
+            return;
+        }
+        filters = newCache(
+                maxResidentSize == null ? DEFAULT_MAX_RESIDENT_SIZE : DataSize.valueOf(maxResidentSize),
+                residentTtl == null ? DEFAULT_RESIDENT_TTL : Duration.valueOf(residentTtl));
+    }
+
+    private static Cache<String, Slice> newCache(DataSize maxResidentSize, Duration residentTtl)
+    {
+        // One segment, so a single filter can use all of the resident size
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxResidentSize.toBytes())
+                .weigher((String location, Slice serialized) -> serialized.length())
+                .expireAfterWrite(residentTtl.toMillis(), MILLISECONDS)
+                .build();
+    }
+
+    public static void register(String location, Slice serialized)
+    {
+        filters.put(location, serialized);
+    }
+
+    // Resident filter at the location, null if it was not loaded on this worker
+    public static Slice getIfPresent(String location)
+    {
+        return filters.getIfPresent(location);
+    }
+
+    // Resident filter at the location with the given hash, a resident filter with another hash is loaded
+    // again so all workers of a query resolve a reference to the same filter
+    public static Slice get(String location, Slice hash)
+    {
+        Slice serialized = get(location);
+        if (serialized.equals(0, 32, hash, 0, 32)) {
+            return serialized;
+        }
+        filters.asMap().remove(location, serialized);
+        serialized = get(location);
+        if (!serialized.equals(0, 32, hash, 0, 32)) {
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Bloom filter at " + location + " changed while it was referenced");
+        }
+        return serialized;
+    }
+
+    public static Slice get(String location)
+    {
+        try {
+            return filters.get(location, () -> load(location));
+        }
+        catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof PrestoException) {
+                throw (PrestoException) ex.getCause();
+            }
+            throw new PrestoException(NOT_FOUND, "Failed to load bloom filter from " + location, ex.getCause());
+        }
+    }
+
+    private static Slice load(String location) throws Exception
+    {
+        log.info("Registering bloom filter " + location);
+        byte[] bytes;
+        if (location.startsWith("file:")) {
+            bytes = Files.readAllBytes(Paths.get(URI.create(location)));
+        }
+        else {
+            bytes = BloomFilter.fetch(location);
+        }
+        if (bytes == null || bytes.length == 0) {
+            throw new PrestoException(NOT_FOUND, "No bloom filter at " + location);
+        }
+
+        return decode(location, bytes);
+    }
+
+    // Files and the persist service hold filters written by the engine, their hash is checked but kept as
+    // references from other workers carry it
+    static Slice decode(String location, byte[] bytes)
+    {
+        try {
+            // Files may end with a newline
+            Slice serialized = Slices.wrappedBuffer(Base64.getMimeDecoder().decode(bytes));
+            BloomFilter.verify(serialized);
+            return serialized;
+        }
+        catch (IllegalArgumentException ex) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Corrupt bloom filter at " + location + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    public static long getResidentBytes()
+    {
+        long bytes = 0;
+        for (Slice serialized : filters.asMap().values()) {
+            bytes += serialized.length();
+        }
+        return bytes;
+    }
+
+    public static long getResidentFilters()
+    {
+        return filters.size();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.stats.TimeStat;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static com.facebook.presto.spi.StandardErrorCode.NOT_FOUND;
+
+// Probes a filter of the persist service through its membership endpoint, until probing remotely has
+// cost more than downloading the filter once or MAX_REMOTE_REQUESTS requests were sent. A request is
+// accounted as REQUEST_COST_BYTES plus its keys, so single keys switch to a local copy sooner than
+// large batches. Local copies are weighed by their size and downloaded again after LOCAL_TTL_MINUTES,
+// so a re-persisted filter is picked up.
+//
+// The request body holds <key_size>:<key> frames, the response one byte per key.
+public final class BloomFilterRemote
+{
+    public static final int MAX_REMOTE_PROBES = 10_000;
+
+    // Round trip latency expressed in bytes that could have been downloaded instead
+    private static final long REQUEST_COST_BYTES = 64 * 1024;
+    // Row at a time probes of a very large filter download it after this many round trips
+    private static final int MAX_REMOTE_REQUESTS = 32;
+    private static final long MAX_LOCAL_BYTES = 1L << 30;
+    private static final long LOCAL_TTL_MINUTES = 10;
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+    private static final String SIZE_HEADER = "X-Bloomfilter-Size";
+
+    private static final Cache<String, BloomFilterRemote> REMOTES = CacheBuilder.newBuilder()
+            .maximumSize(16)
+            .expireAfterWrite(LOCAL_TTL_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    // One segment, so a single copy can use all of MAX_LOCAL_BYTES
+    private static final Cache<String, BloomFilter> LOCALS = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(MAX_LOCAL_BYTES)
+            .<String, BloomFilter>weigher((url, bf) -> Math.max(1, bf.estimatedInMemorySize()))
+            .expireAfterWrite(LOCAL_TTL_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    private final String url;
+    private volatile long size = -1;
+    private long remoteCost;
+    private int remoteRequests;
+
+    private BloomFilterRemote(String url)
+    {
+        this.url = url;
+    }
+
+    public static BloomFilterRemote get(String url)
+    {
+        try {
+            return REMOTES.get(url, () -> new BloomFilterRemote(url));
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    public boolean mightContain(Slice key)
+    {
+        return mightContain(Collections.singletonList(key))[0];
+    }
+
+    public boolean[] mightContain(List<Slice> keys)
+    {
+        boolean[] matches = new boolean[keys.size()];
+        for (int start = 0; start < keys.size(); start += MAX_REMOTE_PROBES) {
+            List<Slice> batch = keys.subList(start, Math.min(keys.size(), start + MAX_REMOTE_PROBES));
+            boolean[] batchMatches = probe(batch);
+            System.arraycopy(batchMatches, 0, matches, start, batchMatches.length);
+        }
+        return matches;
+    }
+
+    private boolean[] probe(List<Slice> keys)
+    {
+        DynamicSliceOutput body = new DynamicSliceOutput(keys.size() * 16);
+        for (Slice key : keys) {
+            body.appendInt(key.length());
+            body.appendBytes(key);
+        }
+
+        BloomFilter bf = LOCALS.getIfPresent(url);
+        if (bf == null && shouldProbeRemotely(body.size())) {
+            byte[] response = request(body.slice().getBytes());
+            if (response != null) {
+                if (response.length != keys.size()) {
+                    throw new PrestoException(GENERIC_INTERNAL_ERROR, "Probing " + url + " returned " + response.length + " results for " + keys.size() + " keys");
+                }
+                boolean[] matches = new boolean[keys.size()];
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] = response[i] == 1;
+                }
+                return matches;
+            }
+        }
+        if (bf == null) {
+            bf = download();
+        }
+        boolean[] matches = new boolean[keys.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = bf.mightContain(keys.get(i));
+        }
+        return matches;
+    }
+
+    private synchronized boolean shouldProbeRemotely(int bodySize)
+    {
+        long cost = REQUEST_COST_BYTES + bodySize;
+        if (remoteRequests >= MAX_REMOTE_REQUESTS || (size >= 0 && remoteCost + cost > size)) {
+            return false;
+        }
+        remoteCost += cost;
+        remoteRequests++;
+        return true;
+    }
+
+    // Response of the membership endpoint, null if the service can not probe this filter
+    private byte[] request(byte[] body)
+    {
+        ContentResponse response;
+        try (TimeStat.BlockTimer ignored = STATS.getRemoteProbeTime().time()) {
+            response = BloomFilterScalarFunctions.HTTP_CLIENT.newRequest(url + "/contains")
+                    .method(HttpMethod.POST)
+                    .content(new BytesContentProvider(body))
+                    .timeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .send();
+        }
+        catch (Exception ex) {
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Probing " + url + " failed: " + ex.getMessage(), ex);
+        }
+        if (response.getStatus() == 404) {
+            throw new PrestoException(NOT_FOUND, "Bloom filter " + url + " not found");
+        }
+        if (response.getStatus() != 200) {
+            // E.g. a layout the service does not decode
+            return null;
+        }
+        String size = response.getHeaders().get(SIZE_HEADER);
+        if (size != null) {
+            this.size = Long.parseLong(size);
+        }
+        STATS.getRemoteProbes().update(response.getContent().length);
+        return response.getContent();
+    }
+
+    private synchronized BloomFilter download()
+    {
+        BloomFilter bf = LOCALS.getIfPresent(url);
+        if (bf == null) {
+            try {
+                bf = BloomFilter.fromUrl(url);
+            }
+            catch (Exception ex) {
+                throw new PrestoException(GENERIC_INTERNAL_ERROR, "Loading " + url + " failed: " + ex.getMessage(), ex);
+            }
+            if (bf == null) {
+                throw new PrestoException(NOT_FOUND, "Bloom filter " + url + " not found");
+            }
+            STATS.getRemoteDownloads().update(1);
+            LOCALS.put(url, bf);
+        }
+        return bf;
+    }
+
+    @VisibleForTesting
+    static void invalidateLocal(String url)
+    {
+        LOCALS.invalidate(url);
+    }
+}
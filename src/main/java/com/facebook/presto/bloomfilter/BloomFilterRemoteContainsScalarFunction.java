@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.block.BlockBuilderStatus;
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.facebook.presto.spi.type.BooleanType.BOOLEAN;
+import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
+
+@Description("Determines if elements are in the bloom filter at the url, probing it in the persist service or downloading it")
+@ScalarFunction(value = "bloom_filter_remote_contains")
+public final class BloomFilterRemoteContainsScalarFunction extends BloomFilterScalarFunctions
+{
+    private BloomFilterRemoteContainsScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(StandardTypes.BOOLEAN)
+    @SqlNullable
+    public static Boolean varcharBloomFilterRemoteContains(@SqlNullable @SqlType(StandardTypes.VARCHAR) Slice url, @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice slice)
+    {
+        if (url == null || slice == null) {
+            return false;
+        }
+        return BloomFilterRemote.get(url.toStringUtf8()).mightContain(slice);
+    }
+
+    // All elements are sent in as few requests as possible
+    @SqlType("array(boolean)")
+    @SqlNullable
+    public static Block arrayBloomFilterRemoteContains(@SqlNullable @SqlType(StandardTypes.VARCHAR) Slice url, @SqlNullable @SqlType("array(varchar)") Block array)
+    {
+        if (url == null || array == null) {
+            return null;
+        }
+        List<Slice> keys = new ArrayList<>(array.getPositionCount());
+        for (int i = 0; i < array.getPositionCount(); i++) {
+            keys.add(array.isNull(i) ? null : VARCHAR.getSlice(array, i));
+        }
+        List<Slice> probes = new ArrayList<>(keys.size());
+        for (Slice key : keys) {
+            if (key != null) {
+                probes.add(key);
+            }
+        }
+        boolean[] matches = BloomFilterRemote.get(url.toStringUtf8()).mightContain(probes);
+
+        BlockBuilder out = BOOLEAN.createBlockBuilder(new BlockBuilderStatus(), keys.size());
+        int probe = 0;
+        for (Slice key : keys) {
+            BOOLEAN.writeBoolean(out, key != null && matches[probe++]);
+        }
+        return out.build();
+    }
+}
@@ -18,11 +18,25 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.hash.HashCode;
 import io.airlift.log.Logger;
 import io.airlift.slice.Slice;
+import io.airlift.stats.TimeStat;
 import org.eclipse.jetty.client.HttpClient;
 
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+
 public abstract class BloomFilterScalarFunctions
 {
-    protected static final Cache<HashCode, BloomFilter> BF_CACHE = CacheBuilder.newBuilder().maximumSize(40).build();
+    // Weighed by size, so queries probing many small filters (e.g. bloom_filter_match over one filter
+    // per segment) keep all of them while a few default sized filters still fit. The cache has a single
+    // segment, as the weight is split over the segments and larger filters would be evicted right away.
+    private static final long MAX_CACHED_BYTES = 1L << 30;
+
+    protected static final Cache<HashCode, BloomFilter> BF_CACHE = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(MAX_CACHED_BYTES)
+            .<HashCode, BloomFilter>weigher((hash, bf) -> Math.max(1, bf.estimatedInMemorySize()))
+            .recordStats()
+            .<HashCode, BloomFilter>removalListener(notification -> STATS.filterEvicted(notification.getValue()))
+            .build();
     protected static final Logger log = Logger.get(BloomFilterScalarFunctions.class);
     public static final HttpClient HTTP_CLIENT = new HttpClient();
 
@@ -54,7 +68,9 @@ public abstract class BloomFilterScalarFunctions
             bf = BloomFilterScalarFunctions.BF_CACHE.getIfPresent(hash);
         }
         if (bf == null) {
-            bf = BloomFilter.newInstance(bloomFilterSlice);
+            try (TimeStat.BlockTimer ignored = STATS.getCacheLoadTime().time()) {
+                bf = BloomFilter.newInstance(bloomFilterSlice);
+            }
             BloomFilterScalarFunctions.BF_CACHE.put(hash, bf);
         }
         return bf;
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.array.LongBigArray;
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+
+// Bitsets of the filters of many groups that share their parameters, packed into one big array instead of a
+// filter object per group. Groups are given dense slots in the order they add to the slab, the filter of a
+// group occupies words [slot * wordsPerFilter, (slot + 1) * wordsPerFilter), the pre bitset first, and is
+// only materialized into a BloomFilter when it is read. Slots of removed groups are reused, so groups with
+// other parameters or filters kept elsewhere cost no words.
+public final class BloomFilterSlab
+{
+    private final long expectedInsertions;
+    private final double falsePositivePercentage;
+    private final int preHashes;
+    private final long preBits;
+    private final int hashes;
+    private final long bits;
+    private final int preWords;
+    private final int wordsPerFilter;
+
+    private final LongBigArray words = new LongBigArray();
+    // Slot of every group, -1 for groups without a filter in the slab
+    private final LongBigArray slots = new LongBigArray(-1);
+    private final LongBigArray freeSlots = new LongBigArray();
+    private long capacity;
+    private long slotCount;
+    private long freeSlotCount;
+
+    public BloomFilterSlab(long expectedInsertions, double falsePositivePercentage)
+    {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositivePercentage = falsePositivePercentage;
+
+        // Same bitsets as a filter created with these parameters
+        BloomFilter template = BloomFilter.newInstance(expectedInsertions, falsePositivePercentage);
+        this.preHashes = template.getPreBitSet().getHashes();
+        this.preBits = template.getPreBitSet().getBits();
+        this.hashes = template.getBitSet().getHashes();
+        this.bits = template.getBitSet().getBits();
+        this.preWords = (int) (preBits >>> 6);
+        this.wordsPerFilter = (int) ((preBits + bits) >>> 6);
+    }
+
+    public boolean hasParameters(long expectedInsertions, double falsePositivePercentage)
+    {
+        return this.expectedInsertions == expectedInsertions && this.falsePositivePercentage == falsePositivePercentage;
+    }
+
+    public boolean contains(long group)
+    {
+        return group < capacity && slots.get(group) >= 0;
+    }
+
+    // Adds an element to the filter of the group, the filter is created even when the element is empty
+    public void put(long group, Slice value)
+    {
+        long slot = allocate(group);
+        if (value.length() < 1) {
+            return;
+        }
+        long hash = XxHash64.hash(value);
+        long offset = slot * wordsPerFilter;
+        put(offset, preHashes, preBits, hash);
+        put(offset + preWords, hashes, bits, hash);
+    }
+
+    private long allocate(long group)
+    {
+        if (group >= capacity) {
+            capacity = group + 1;
+            slots.ensureCapacity(capacity);
+        }
+        long slot = slots.get(group);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (freeSlotCount > 0) {
+            slot = freeSlots.get(--freeSlotCount);
+            for (long i = slot * wordsPerFilter; i < (slot + 1) * wordsPerFilter; i++) {
+                words.set(i, 0);
+            }
+        }
+        else {
+            slot = slotCount++;
+            words.ensureCapacity(slotCount * wordsPerFilter);
+        }
+        slots.set(group, slot);
+        return slot;
+    }
+
+    private void put(long offset, int hashes, long bits, long hash)
+    {
+        for (int i = 1; i <= hashes; i++) {
+            long bit = BloomFilterBitSet.position(hash, i, bits);
+            long index = offset + (bit >>> 6);
+            words.set(index, words.get(index) | (1L << bit));
+        }
+    }
+
+    // Copies the filter of the group out of the slab, changes to it are not written back
+    public BloomFilter materialize(long group)
+    {
+        long offset = slots.get(group) * wordsPerFilter;
+        long[] pre = new long[preWords];
+        for (int i = 0; i < pre.length; i++) {
+            pre[i] = words.get(offset + i);
+        }
+        long[] main = new long[wordsPerFilter - preWords];
+        for (int i = 0; i < main.length; i++) {
+            main[i] = words.get(offset + preWords + i);
+        }
+        return BloomFilter.newInstance(
+                expectedInsertions,
+                falsePositivePercentage,
+                BloomFilterBitSet.wrap(preHashes, preBits, pre),
+                BloomFilterBitSet.wrap(hashes, bits, main));
+    }
+
+    // The group keeps its filter elsewhere from now on
+    public void remove(long group)
+    {
+        if (contains(group)) {
+            freeSlots.ensureCapacity(freeSlotCount + 1);
+            freeSlots.set(freeSlotCount++, slots.get(group));
+            slots.set(group, -1);
+        }
+    }
+
+    public long sizeOf()
+    {
+        return words.sizeOf() + slots.sizeOf() + freeSlots.sizeOf();
+    }
+}
@@ -15,6 +15,7 @@ package com.facebook.presto.bloomfilter;
 
 import com.facebook.presto.spi.function.AccumulatorState;
 import com.facebook.presto.spi.function.AccumulatorStateMetadata;
+import io.airlift.slice.Slice;
 
 import javax.validation.constraints.NotNull;
 
@@ -26,5 +27,14 @@ public interface BloomFilterState extends AccumulatorState
 
     void setBloomFilter(BloomFilter value);
 
+    // Serialized filter that is only deserialized once it is used, merging it into another filter ORs it
+    // straight from its serialized form. Null once deserialized.
+    Slice getSerializedBloomFilter();
+
+    void setSerializedBloomFilter(Slice value);
+
+    // Adds an element to the filter, which is created with the given parameters when absent
+    void put(Slice value, long expectedInsertions, double falsePositivePercentage);
+
     void addMemoryUsage(int value);
 }
@@ -16,6 +16,7 @@ package com.facebook.presto.bloomfilter;
 import com.facebook.presto.array.ObjectBigArray;
 import com.facebook.presto.spi.function.AccumulatorStateFactory;
 import com.facebook.presto.spi.function.GroupedAccumulatorState;
+import io.airlift.slice.Slice;
 
 import java.util.Objects;
 
@@ -49,6 +50,8 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
             implements GroupedAccumulatorState, BloomFilterState
     {
         private final ObjectBigArray<BloomFilter> bfs = new ObjectBigArray<>();
+        // Filters of the groups that share the parameters of the first filter
+        private BloomFilterSlab slab;
         private long groupId;
         private long size;
 
@@ -64,10 +67,15 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
             this.groupId = groupId;
         }
 
+        // Filters in the slab are materialized on every call, changes to them are only kept by setBloomFilter
         @Override
         public BloomFilter getBloomFilter()
         {
-            return bfs.get(groupId);
+            BloomFilter bf = bfs.get(groupId);
+            if (bf == null && slab != null && slab.contains(groupId)) {
+                return slab.materialize(groupId);
+            }
+            return bf;
         }
 
         @Override
@@ -75,6 +83,39 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
         {
             Objects.requireNonNull(value, "value is null");
             bfs.set(groupId, value);
+
+            // A group leaving the slab frees its slot for other groups, its filter is accounted from now on
+            if (slab != null && slab.contains(groupId)) {
+                slab.remove(groupId);
+                size += value.estimatedInMemorySize();
+            }
+        }
+
+        @Override
+        public Slice getSerializedBloomFilter()
+        {
+            return null;
+        }
+
+        @Override
+        public void setSerializedBloomFilter(Slice value)
+        {
+            setBloomFilter(BloomFilter.newInstance(value));
+        }
+
+        @Override
+        public void put(Slice value, long expectedInsertions, double falsePositivePercentage)
+        {
+            if (bfs.get(groupId) == null) {
+                if (slab == null) {
+                    slab = new BloomFilterSlab(expectedInsertions, falsePositivePercentage);
+                }
+                if (slab.hasParameters(expectedInsertions, falsePositivePercentage)) {
+                    slab.put(groupId, value);
+                    return;
+                }
+            }
+            AbstractBloomFilterAggregation.getOrCreateBloomFilter(this, expectedInsertions, falsePositivePercentage).put(value);
         }
 
         @Override
@@ -86,7 +127,7 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
         @Override
         public long getEstimatedSize()
         {
-            return size + bfs.sizeOf();
+            return size + bfs.sizeOf() + (slab == null ? 0 : slab.sizeOf());
         }
     }
 
@@ -94,10 +135,15 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
             implements BloomFilterState
     {
         private BloomFilter bf;
+        private Slice serialized;
 
         @Override
         public BloomFilter getBloomFilter()
         {
+            if (bf == null && serialized != null) {
+                bf = BloomFilter.newInstance(serialized);
+                serialized = null;
+            }
             return bf;
         }
 
@@ -105,6 +151,26 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
         public void setBloomFilter(BloomFilter value)
         {
             bf = value;
+            serialized = null;
+        }
+
+        @Override
+        public Slice getSerializedBloomFilter()
+        {
+            return serialized;
+        }
+
+        @Override
+        public void setSerializedBloomFilter(Slice value)
+        {
+            bf = null;
+            serialized = value;
+        }
+
+        @Override
+        public void put(Slice value, long expectedInsertions, double falsePositivePercentage)
+        {
+            AbstractBloomFilterAggregation.getOrCreateBloomFilter(this, expectedInsertions, falsePositivePercentage).put(value);
         }
 
         @Override
@@ -117,7 +183,7 @@ public class BloomFilterStateFactory implements AccumulatorStateFactory<BloomFil
         public long getEstimatedSize()
         {
             if (bf == null) {
-                return 0;
+                return serialized == null ? 0 : serialized.length();
             }
             return bf.estimatedInMemorySize();
         }
@@ -29,11 +29,13 @@ public class BloomFilterStateSerializer implements AccumulatorStateSerializer<Bl
     @Override
     public void serialize(BloomFilterState state, BlockBuilder out)
     {
-        if (state.getBloomFilter() == null) {
+        // Filters in a slab are materialized on every call
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
             out.appendNull();
         }
         else {
-            BloomFilterType.BLOOM_FILTER.writeSlice(out, state.getBloomFilter().serialize());
+            BloomFilterType.BLOOM_FILTER.writeSlice(out, bf.serialize());
         }
     }
 
@@ -41,7 +43,7 @@ public class BloomFilterStateSerializer implements AccumulatorStateSerializer<Bl
     public void deserialize(Block block, int index, BloomFilterState state)
     {
         if (!block.isNull(index)) {
-            state.setBloomFilter(BloomFilter.newInstance(BloomFilterType.BLOOM_FILTER.getSlice(block, index)));
+            state.setSerializedBloomFilter(BloomFilterType.BLOOM_FILTER.getSlice(block, index));
         }
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+// Statistics of the bits that are actually set in a filter, as opposed to its configured parameters. The
+// cardinality is estimated from the fill ratio (Swamidass & Baldi, "Mathematical correction for fingerprint
+// similarity measures to improve chemical retrieval"), n = -(m / k) * ln(1 - X / m), and the false positive
+// percentage is the chance that all k bits of a new element are set, (X / m) ^ k.
+//
+// Static filters have no bits to count, their set bits and fill ratio are null.
+public final class BloomFilterStatistics
+{
+    private final Long bitsSet;
+    private final Double fillRatio;
+    private final double estimatedCardinality;
+    private final double falsePositivePercentage;
+    private final long sizeBytes;
+
+    private BloomFilterStatistics(Long bitsSet, Double fillRatio, double estimatedCardinality, double falsePositivePercentage, long sizeBytes)
+    {
+        this.bitsSet = bitsSet;
+        this.fillRatio = fillRatio;
+        this.estimatedCardinality = estimatedCardinality;
+        this.falsePositivePercentage = falsePositivePercentage;
+        this.sizeBytes = sizeBytes;
+    }
+
+    // Main bitset with the pre bitset in front of it, an element is only contained when both match
+    public static BloomFilterStatistics of(BloomFilterBitSet preBitSet, BloomFilterBitSet bitSet)
+    {
+        long bitsSet = bitSet.bitCount();
+        return new BloomFilterStatistics(
+                bitsSet,
+                (double) bitsSet / bitSet.getBits(),
+                estimateCardinality(bitsSet, bitSet),
+                falsePositivePercentage(preBitSet.bitCount(), preBitSet) * falsePositivePercentage(bitsSet, bitSet),
+                preBitSet.getSizeInBytes() + bitSet.getSizeInBytes());
+    }
+
+    // Partitions are picked uniformly by the element hash, partitions that were never allocated are empty
+    public static BloomFilterStatistics of(BloomFilterBitSet[] partitions)
+    {
+        long bitsSet = 0;
+        long bits = 0;
+        double estimatedCardinality = 0;
+        double falsePositivePercentage = 0;
+        long sizeBytes = 0;
+        for (BloomFilterBitSet bitSet : partitions) {
+            if (bitSet == null) {
+                continue;
+            }
+            long partitionBitsSet = bitSet.bitCount();
+            bitsSet += partitionBitsSet;
+            bits += bitSet.getBits();
+            estimatedCardinality += estimateCardinality(partitionBitsSet, bitSet);
+            falsePositivePercentage += falsePositivePercentage(partitionBitsSet, bitSet);
+            sizeBytes += bitSet.getSizeInBytes();
+        }
+        return new BloomFilterStatistics(
+                bitsSet,
+                bits == 0 ? 0.0 : (double) bitsSet / bits,
+                estimatedCardinality,
+                falsePositivePercentage / partitions.length,
+                sizeBytes);
+    }
+
+    public static BloomFilterStatistics of(XorFilter staticFilter)
+    {
+        return new BloomFilterStatistics(null, null, staticFilter.getSize(), staticFilter.getFalsePositivePercentage(), staticFilter.estimatedInMemorySize());
+    }
+
+    // Elements in both bitsets, estimated by inclusion-exclusion as |A| + |B| - |A or B| where the union is
+    // the bitwise OR of both
+    public static double estimateOverlap(BloomFilterBitSet bitSet, BloomFilterBitSet other)
+    {
+        double overlap = estimateCardinality(bitSet.bitCount(), bitSet)
+                + estimateCardinality(other.bitCount(), other)
+                - estimateCardinality(bitSet.bitCountOr(other), bitSet);
+        return Math.max(0, overlap);
+    }
+
+    private static double estimateCardinality(long bitsSet, BloomFilterBitSet bitSet)
+    {
+        double m = bitSet.getBits();
+        return (m / bitSet.getHashes()) * Math.log(m / (m - bitsSet));
+    }
+
+    private static double falsePositivePercentage(long bitsSet, BloomFilterBitSet bitSet)
+    {
+        return Math.pow((double) bitsSet / bitSet.getBits(), bitSet.getHashes());
+    }
+
+    public Long getBitsSet()
+    {
+        return bitsSet;
+    }
+
+    public Double getFillRatio()
+    {
+        return fillRatio;
+    }
+
+    public double getEstimatedCardinality()
+    {
+        return estimatedCardinality;
+    }
+
+    public double getFalsePositivePercentage()
+    {
+        return falsePositivePercentage;
+    }
+
+    public long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+}
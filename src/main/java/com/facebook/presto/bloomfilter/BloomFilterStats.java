@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.google.common.cache.CacheStats;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.DistributionStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+import org.weakref.jmx.ObjectNames;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Counters and latencies of the hot paths, exported over JMX as com.facebook.presto.bloomfilter:name=BloomFilterStats
+public final class BloomFilterStats
+{
+    public static final BloomFilterStats STATS = new BloomFilterStats();
+
+    private static final Logger log = Logger.get(BloomFilterStats.class);
+
+    private final TimeStat cacheLoadTime = new TimeStat(MILLISECONDS);
+    private final CounterStat deserializedBytes = new CounterStat();
+    private final TimeStat serializeTime = new TimeStat(MILLISECONDS);
+    private final TimeStat downloadTime = new TimeStat(MILLISECONDS);
+    private final DistributionStat downloadBytes = new DistributionStat();
+    private final CounterStat downloadFailures = new CounterStat();
+    private final TimeStat persistTime = new TimeStat(MILLISECONDS);
+    private final CounterStat persistFailures = new CounterStat();
+    private final CounterStat persistRetries = new CounterStat();
+    private final CounterStat persistDeltas = new CounterStat();
+    private final TimeStat remoteProbeTime = new TimeStat(MILLISECONDS);
+    private final CounterStat remoteProbes = new CounterStat();
+    private final CounterStat remoteDownloads = new CounterStat();
+
+    // Probes are counted by the filters themselves, these hold the counts of filters that left the cache
+    private final LongAdder evictedPreFilterProbes = new LongAdder();
+    private final LongAdder evictedPreFilterRejects = new LongAdder();
+
+    private BloomFilterStats()
+    {
+    }
+
+    public static void export()
+    {
+        try {
+            new MBeanExporter(ManagementFactory.getPlatformMBeanServer()).export(ObjectNames.generatedNameOf(BloomFilterStats.class), STATS);
+        }
+        catch (RuntimeException ex) {
+            // Already exported when the plugin is loaded more than once
+            log.warn("Failed to export bloom filter stats: " + ex.getMessage());
+        }
+    }
+
+    void filterEvicted(BloomFilter bf)
+    {
+        evictedPreFilterProbes.add(bf.getPreFilterProbes());
+        evictedPreFilterRejects.add(bf.getPreMiss());
+    }
+
+    @Managed
+    public long getCacheHits()
+    {
+        return cacheStats().hitCount();
+    }
+
+    @Managed
+    public long getCacheMisses()
+    {
+        return cacheStats().missCount();
+    }
+
+    @Managed
+    public long getCacheEvictions()
+    {
+        return cacheStats().evictionCount();
+    }
+
+    @Managed
+    public long getCacheSize()
+    {
+        return BloomFilterScalarFunctions.BF_CACHE.size();
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getCacheLoadTime()
+    {
+        return cacheLoadTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDeserializedBytes()
+    {
+        return deserializedBytes;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getSerializeTime()
+    {
+        return serializeTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getDownloadTime()
+    {
+        return downloadTime;
+    }
+
+    @Managed
+    @Nested
+    public DistributionStat getDownloadBytes()
+    {
+        return downloadBytes;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDownloadFailures()
+    {
+        return downloadFailures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getPersistTime()
+    {
+        return persistTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getPersistFailures()
+    {
+        return persistFailures;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getPersistRetries()
+    {
+        return persistRetries;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getPersistDeltas()
+    {
+        return persistDeltas;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRemoteProbeTime()
+    {
+        return remoteProbeTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRemoteProbes()
+    {
+        return remoteProbes;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRemoteDownloads()
+    {
+        return remoteDownloads;
+    }
+
+    @Managed
+    public long getResidentBytes()
+    {
+        return BloomFilterRegistry.getResidentBytes();
+    }
+
+    @Managed
+    public long getResidentFilters()
+    {
+        return BloomFilterRegistry.getResidentFilters();
+    }
+
+    @Managed
+    public long getPreFilterProbes()
+    {
+        long probes = evictedPreFilterProbes.sum();
+        for (BloomFilter bf : BloomFilterScalarFunctions.BF_CACHE.asMap().values()) {
+            probes += bf.getPreFilterProbes();
+        }
+        return probes;
+    }
+
+    @Managed
+    public long getPreFilterRejects()
+    {
+        long rejects = evictedPreFilterRejects.sum();
+        for (BloomFilter bf : BloomFilterScalarFunctions.BF_CACHE.asMap().values()) {
+            rejects += bf.getPreMiss();
+        }
+        return rejects;
+    }
+
+    @Managed
+    public double getPreFilterRejectRate()
+    {
+        long probes = getPreFilterProbes();
+        return probes == 0 ? 0.0 : (double) getPreFilterRejects() / probes;
+    }
+
+    private static CacheStats cacheStats()
+    {
+        return BloomFilterScalarFunctions.BF_CACHE.stats();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.block.BlockBuilderStatus;
+import com.facebook.presto.spi.block.InterleavedBlockBuilder;
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import io.airlift.slice.Slice;
+
+import javax.annotation.Nullable;
+
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
+
+@Description("Display the set bits, fill ratio, estimated cardinality, false positive percentage and size of the bloom filter")
+@Nullable
+@ScalarFunction(value = "bloom_filter_stats")
+public final class BloomFilterStatsScalarFunction
+        extends BloomFilterScalarFunctions
+{
+    public static final String STATS_TYPE = "row(bits_set bigint,fill_ratio double,estimated_cardinality double,false_positive_percentage double,size_bytes bigint)";
+
+    // Counting bits reads the whole filter, so the statistics are kept per content hash
+    private static final Cache<HashCode, BloomFilterStatistics> STATISTICS_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    private BloomFilterStatsScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(STATS_TYPE)
+    @Nullable
+    @SqlNullable
+    public static Block bloomFilterStats(@SqlNullable @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice)
+    {
+        if (bloomFilterSlice == null) {
+            return null;
+        }
+        HashCode hash = BloomFilter.readHash(bloomFilterSlice);
+        BloomFilterStatistics statistics = STATISTICS_CACHE.getIfPresent(hash);
+        if (statistics == null) {
+            statistics = getOrLoadBloomFilter(bloomFilterSlice).getStatistics();
+            STATISTICS_CACHE.put(hash, statistics);
+        }
+
+        BlockBuilder row = new InterleavedBlockBuilder(ImmutableList.of(BIGINT, DOUBLE, DOUBLE, DOUBLE, BIGINT), new BlockBuilderStatus(), 5);
+        if (statistics.getBitsSet() == null) {
+            row.appendNull();
+            row.appendNull();
+        }
+        else {
+            BIGINT.writeLong(row, statistics.getBitsSet());
+            DOUBLE.writeDouble(row, statistics.getFillRatio());
+        }
+        DOUBLE.writeDouble(row, statistics.getEstimatedCardinality());
+        DOUBLE.writeDouble(row, statistics.getFalsePositivePercentage());
+        BIGINT.writeLong(row, statistics.getSizeBytes());
+        return row.build();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ConnectorTableHandle;
+import com.facebook.presto.spi.SchemaTableName;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+public final class BloomFilterTableHandle implements ConnectorTableHandle
+{
+    private final String connectorId;
+    private final SchemaTableName tableName;
+    private final String location;
+
+    @JsonCreator
+    public BloomFilterTableHandle(
+            @JsonProperty("connectorId") String connectorId,
+            @JsonProperty("tableName") SchemaTableName tableName,
+            @JsonProperty("location") String location)
+    {
+        this.connectorId = Objects.requireNonNull(connectorId, "connectorId is null");
+        this.tableName = Objects.requireNonNull(tableName, "tableName is null");
+        this.location = Objects.requireNonNull(location, "location is null");
+    }
+
+    @JsonProperty
+    public String getConnectorId()
+    {
+        return connectorId;
+    }
+
+    @JsonProperty
+    public SchemaTableName getTableName()
+    {
+        return tableName;
+    }
+
+    @JsonProperty
+    public String getLocation()
+    {
+        return location;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(connectorId, tableName, location);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        BloomFilterTableHandle other = (BloomFilterTableHandle) obj;
+        return connectorId.equals(other.connectorId) && tableName.equals(other.tableName) && location.equals(other.location);
+    }
+
+    @Override
+    public String toString()
+    {
+        return connectorId + ":" + tableName;
+    }
+}
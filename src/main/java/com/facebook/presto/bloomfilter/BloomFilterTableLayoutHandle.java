@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ConnectorTableLayoutHandle;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+public final class BloomFilterTableLayoutHandle implements ConnectorTableLayoutHandle
+{
+    private final BloomFilterTableHandle table;
+
+    @JsonCreator
+    public BloomFilterTableLayoutHandle(@JsonProperty("table") BloomFilterTableHandle table)
+    {
+        this.table = Objects.requireNonNull(table, "table is null");
+    }
+
+    @JsonProperty
+    public BloomFilterTableHandle getTable()
+    {
+        return table;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return table.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return table.equals(((BloomFilterTableLayoutHandle) obj).table);
+    }
+
+    @Override
+    public String toString()
+    {
+        return table.toString();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// Lists the persisted filters of a catalog by table name, they are read from a local directory holding
+// one Base64 serialized filter per file, or from the keys of the persist service. The persist url is the
+// url filters are persisted under without the key, e.g. http://localhost:8081/bloomfilter/
+//
+// Names that map to the same table, e.g. differing in case or extension, are listed once: the directory
+// takes precedence over the persist service, and within a source the first name in sort order wins. The
+// listing is kept for the configured ttl, so resolving tables does not list the persist service every time.
+public class BloomFilterTableSource
+{
+    public static final String DIRECTORY_PROPERTY = "bloomfilter.directory";
+    public static final String PERSIST_URL_PROPERTY = "bloomfilter.persist-url";
+    public static final String LIST_TTL_PROPERTY = "bloomfilter.list-ttl";
+
+    private static final Duration DEFAULT_LIST_TTL = new Duration(10, SECONDS);
+
+    private static final Logger log = Logger.get(BloomFilterTableSource.class);
+
+    private final String directory;
+    private final String persistUrl;
+    private final Supplier<Map<String, String>> tables;
+
+    public BloomFilterTableSource(Map<String, String> config)
+    {
+        this.directory = config.get(DIRECTORY_PROPERTY);
+        String url = config.get(PERSIST_URL_PROPERTY);
+        this.persistUrl = url == null || url.endsWith("/") ? url : url + "/";
+        if (directory == null && persistUrl == null) {
+            throw new IllegalArgumentException("Either " + DIRECTORY_PROPERTY + " or " + PERSIST_URL_PROPERTY + " is required");
+        }
+        String listTtl = config.get(LIST_TTL_PROPERTY);
+        long ttlMillis = (listTtl == null ? DEFAULT_LIST_TTL : Duration.valueOf(listTtl)).toMillis();
+        this.tables = ttlMillis == 0 ? this::loadTables : Suppliers.memoizeWithExpiration(this::loadTables, ttlMillis, MILLISECONDS);
+    }
+
+    // Location by table name
+    public Map<String, String> listTables()
+    {
+        return tables.get();
+    }
+
+    private Map<String, String> loadTables()
+    {
+        Map<String, String> tables = new LinkedHashMap<>();
+        if (directory != null) {
+            File[] files = new File(directory).listFiles(File::isFile);
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparing(File::getName));
+                for (File file : files) {
+                    put(tables, tableName(file.getName()), file.toURI().toString());
+                }
+            }
+        }
+        if (persistUrl != null) {
+            byte[] keys;
+            try {
+                keys = BloomFilter.fetch(persistUrl.substring(0, persistUrl.length() - 1));
+            }
+            catch (Exception ex) {
+                throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to list bloom filters at " + persistUrl, ex);
+            }
+            if (keys != null) {
+                String[] names = new String(keys, UTF_8).split("\n");
+                Arrays.sort(names);
+                for (String key : names) {
+                    if (!key.isEmpty()) {
+                        put(tables, tableName(key), persistUrl + key);
+                    }
+                }
+            }
+        }
+        return ImmutableMap.copyOf(tables);
+    }
+
+    private static void put(Map<String, String> tables, String table, String location)
+    {
+        String listed = tables.putIfAbsent(table, location);
+        if (listed != null) {
+            log.warn("Skipping bloom filter " + location + ", table " + table + " is " + listed);
+        }
+    }
+
+    private static String tableName(String name)
+    {
+        // Table names are case insensitive
+        int extension = name.lastIndexOf('.');
+        return (extension > 0 ? name.substring(0, extension) : name).toLowerCase(Locale.ENGLISH);
+    }
+}
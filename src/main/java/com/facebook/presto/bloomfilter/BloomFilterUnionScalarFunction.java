@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.Description;
+import com.facebook.presto.spi.function.ScalarFunction;
+import com.facebook.presto.spi.function.SqlNullable;
+import com.facebook.presto.spi.function.SqlType;
+import io.airlift.slice.Slice;
+
+@Description("Union of the two bloom filters, both must have the same parameters")
+@ScalarFunction(value = "bloom_filter_union")
+public final class BloomFilterUnionScalarFunction extends BloomFilterScalarFunctions
+{
+    private BloomFilterUnionScalarFunction()
+    {
+        log.warn("New " + getClass().getSimpleName() + " should never be run");
+    }
+
+    @SqlType(BloomFilterType.TYPE)
+    @SqlNullable
+    public static Slice bloomFilterUnion(@SqlNullable @SqlType(BloomFilterType.TYPE) Slice bloomFilterSlice, @SqlNullable @SqlType(BloomFilterType.TYPE) Slice otherBloomFilterSlice)
+    {
+        if (bloomFilterSlice == null || otherBloomFilterSlice == null) {
+            return null;
+        }
+        // Cached filters are shared, so work on a copy
+        BloomFilter bf = getOrLoadBloomFilter(bloomFilterSlice).copy();
+        return bf.putAll(getOrLoadBloomFilter(otherBloomFilterSlice)).serialize();
+    }
+}
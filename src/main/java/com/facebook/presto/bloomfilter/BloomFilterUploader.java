@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.log.Logger;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+// Uploads filters to the persist service without tying up a thread per upload. The amount of uploads in
+// flight on a worker is bounded, callers block until a permit is free (backpressure) or fail once waiting
+// takes longer than any upload could, and failed uploads are retried with exponential backoff and jitter
+// while holding on to their permit. Every way an upload ends, including requests that can not even be
+// sent, completes its future and returns its permit.
+public final class BloomFilterUploader
+{
+    public static final BloomFilterUploader UPLOADER = new BloomFilterUploader(BloomFilterScalarFunctions.HTTP_CLIENT, 16, 4, 100);
+
+    private static final long REQUEST_TIMEOUT_SECONDS = 60;
+    private static final Logger log = Logger.get(BloomFilterUploader.class);
+
+    private final HttpClient httpClient;
+    private final Semaphore permits;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bloomfilter-upload-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BloomFilterUploader(HttpClient httpClient, int maxConcurrentUploads, int maxAttempts, long initialBackoffMillis)
+    {
+        this.httpClient = httpClient;
+        this.permits = new Semaphore(maxConcurrentUploads);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    // Completes once the persist service acknowledged the upload, blocks while too many uploads are in flight
+    public CompletableFuture<Void> upload(String url, byte[] content)
+    {
+        try {
+            if (!permits.tryAcquire(getMaxUploadSeconds(), SECONDS)) {
+                throw new PrestoException(GENERIC_INTERNAL_ERROR, "Timed out waiting to persist " + url + ", too many uploads in flight");
+            }
+        }
+        catch (InterruptedException ix) {
+            Thread.currentThread().interrupt();
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Interrupted while waiting to persist " + url, ix);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        send(url, content, 1, future);
+        return future;
+    }
+
+    public void uploadAndWait(String url, byte[] content)
+    {
+        try {
+            upload(url, content).get(getMaxUploadSeconds(), SECONDS);
+        }
+        catch (InterruptedException ix) {
+            Thread.currentThread().interrupt();
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Interrupted while persisting " + url, ix);
+        }
+        catch (ExecutionException | TimeoutException ex) {
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to persist " + url, ex.getCause() == null ? ex : ex.getCause());
+        }
+    }
+
+    // Longest an upload holds on to its permit
+    private long getMaxUploadSeconds()
+    {
+        return (REQUEST_TIMEOUT_SECONDS + 1) * maxAttempts;
+    }
+
+    private void send(String url, byte[] content, int attempt, CompletableFuture<Void> future)
+    {
+        try {
+            Request put = httpClient.newRequest(url)
+                    .method("PUT")
+                    .content(new BytesContentProvider(content))
+                    .timeout(REQUEST_TIMEOUT_SECONDS, SECONDS);
+            put.send(result -> complete(url, content, attempt, future, result));
+        }
+        catch (RuntimeException ex) {
+            // E.g. a malformed url, the completion callback never runs
+            fail(future, ex);
+        }
+    }
+
+    private void complete(String url, byte[] content, int attempt, CompletableFuture<Void> future, Result result)
+    {
+        Throwable failure = result.getFailure();
+        boolean clientError = false;
+        if (failure == null && result.getResponse().getStatus() / 100 != 2) {
+            failure = new IOException("Unexpected response status " + result.getResponse().getStatus());
+
+            // E.g. merging incompatible filters, which fails again on every attempt
+            clientError = result.getResponse().getStatus() / 100 == 4;
+        }
+        if (failure == null) {
+            permits.release();
+            future.complete(null);
+        }
+        else if (attempt >= maxAttempts || clientError) {
+            fail(future, failure);
+        }
+        else {
+            long backoff = initialBackoffMillis << (attempt - 1);
+            backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            log.warn("Persisting " + url + " failed (attempt " + attempt + "), retrying in " + backoff + "ms: " + failure.getMessage());
+            STATS.getPersistRetries().update(1);
+            try {
+                retryExecutor.schedule(() -> send(url, content, attempt + 1, future), backoff, MILLISECONDS);
+            }
+            catch (RuntimeException ex) {
+                fail(future, ex);
+            }
+        }
+    }
+
+    private void fail(CompletableFuture<Void> future, Throwable failure)
+    {
+        permits.release();
+        future.completeExceptionally(failure);
+    }
+
+    public int getAvailablePermits()
+    {
+        return permits.availablePermits();
+    }
+}
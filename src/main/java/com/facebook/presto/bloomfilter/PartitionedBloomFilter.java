@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+// Bloom filter whose bitset is divided into independent partitions, the partition of a key is picked by
+// the top bits of its 64 bit hash. Partitions are only allocated once a key is put into them, so a state
+// that only sees the keys of a single partition stays small, and partitions from different states can be
+// assembled without re-hashing.
+//
+// Layout is <expectedInsertions>:<falsePositivePercentage>:<partitions>:<present>:(<index>:<bitset>)*, where
+//   expectedInsertions: is an int describing the amount of expected elements over all partitions
+//   falsePositivePercentage: is a double describing the desired false positive percentage
+//   partitions: is an int describing the amount of partitions, always a power of two
+//   present: is an int describing the amount of allocated partitions that follow
+//   index: is an int describing the partition of the bitset
+//   bitset: is the serialized bitset of that partition
+public final class PartitionedBloomFilter
+{
+    public static final int MAX_PARTITIONS = 1 << 16;
+
+    private final long expectedInsertions;
+    private final double falsePositivePercentage;
+    private final BloomFilterBitSet[] partitions;
+
+    private PartitionedBloomFilter(long expectedInsertions, double falsePositivePercentage, int partitions)
+    {
+        checkPartitions(partitions);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositivePercentage = falsePositivePercentage;
+        this.partitions = new BloomFilterBitSet[partitions];
+    }
+
+    public static PartitionedBloomFilter newInstance(long expectedInsertions, double falsePositivePercentage, int partitions)
+    {
+        return new PartitionedBloomFilter(BloomFilter.checkExpectedInsertions(expectedInsertions), falsePositivePercentage, partitions);
+    }
+
+    public static int checkPartitions(long partitions)
+    {
+        if (partitions < 1 || partitions > MAX_PARTITIONS || Long.bitCount(partitions) != 1) {
+            throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Partitions must be a power of two between 1 and " + MAX_PARTITIONS);
+        }
+        return (int) partitions;
+    }
+
+    public static int partition(long hash, int partitions)
+    {
+        int partitionBits = Integer.numberOfTrailingZeros(partitions);
+        if (partitionBits == 0) {
+            return 0;
+        }
+        return (int) (hash >>> (64 - partitionBits));
+    }
+
+    public long getExpectedInsertions()
+    {
+        return expectedInsertions;
+    }
+
+    public double getFalsePositivePercentage()
+    {
+        return falsePositivePercentage;
+    }
+
+    public int getPartitions()
+    {
+        return partitions.length;
+    }
+
+    public void put(long hash)
+    {
+        int index = partition(hash, partitions.length);
+        BloomFilterBitSet bitSet = partitions[index];
+        if (bitSet == null) {
+            bitSet = BloomFilterBitSet.newInstance((expectedInsertions + partitions.length - 1) / partitions.length, falsePositivePercentage);
+            partitions[index] = bitSet;
+        }
+        bitSet.put(hash);
+    }
+
+    public boolean mightContain(long hash)
+    {
+        BloomFilterBitSet bitSet = partitions[partition(hash, partitions.length)];
+        return bitSet != null && bitSet.mightContain(hash);
+    }
+
+    public boolean isCompatible(PartitionedBloomFilter other)
+    {
+        return expectedInsertions == other.expectedInsertions
+                && falsePositivePercentage == other.falsePositivePercentage
+                && partitions.length == other.partitions.length;
+    }
+
+    // Partitions that are only present in the other filter are taken over as is, the other filter
+    // should not be modified afterwards
+    public void putAll(PartitionedBloomFilter other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Partitioned filters are not compatible");
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            BloomFilterBitSet otherBitSet = other.partitions[i];
+            if (otherBitSet == null) {
+                continue;
+            }
+            if (partitions[i] == null) {
+                partitions[i] = otherBitSet;
+            }
+            else {
+                partitions[i].putAll(otherBitSet);
+            }
+        }
+    }
+
+    // Partitions that are absent in the other filter are dropped
+    public void retainAll(PartitionedBloomFilter other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Partitioned filters are not compatible");
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (other.partitions[i] == null) {
+                partitions[i] = null;
+            }
+            else if (partitions[i] != null) {
+                partitions[i].retainAll(other.partitions[i]);
+            }
+        }
+    }
+
+    public double estimateOverlap(PartitionedBloomFilter other)
+    {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Partitioned filters are not compatible");
+        }
+        double overlap = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] != null && other.partitions[i] != null) {
+                overlap += BloomFilterStatistics.estimateOverlap(partitions[i], other.partitions[i]);
+            }
+        }
+        return overlap;
+    }
+
+    public BloomFilterStatistics getStatistics()
+    {
+        return BloomFilterStatistics.of(partitions);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        int size = partitions.length * 8;
+        for (BloomFilterBitSet bitSet : partitions) {
+            if (bitSet != null) {
+                size += bitSet.estimatedInMemorySize();
+            }
+        }
+        return size;
+    }
+
+    public void writeTo(SliceOutput output)
+    {
+        int present = 0;
+        for (BloomFilterBitSet bitSet : partitions) {
+            if (bitSet != null) {
+                present++;
+            }
+        }
+        BloomFilter.writeExpectedInsertions(output, expectedInsertions);
+        output.appendDouble(falsePositivePercentage);
+        output.appendInt(partitions.length);
+        output.appendInt(present);
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] != null) {
+                output.appendInt(i);
+                partitions[i].writeTo(output);
+            }
+        }
+    }
+
+    public static PartitionedBloomFilter readFrom(SliceInput input)
+    {
+        long expectedInsertions = BloomFilter.readExpectedInsertions(input);
+        double falsePositivePercentage = input.readDouble();
+        PartitionedBloomFilter filter = new PartitionedBloomFilter(expectedInsertions, falsePositivePercentage, input.readInt());
+        int present = input.readInt();
+        for (int i = 0; i < present; i++) {
+            int index = input.readInt();
+            if (index < 0 || index >= filter.partitions.length || filter.partitions[index] != null) {
+                throw new IllegalArgumentException("Corrupt partition index " + index);
+            }
+            filter.partitions[index] = BloomFilterBitSet.readFrom(input);
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.facebook.presto.spi.StandardErrorCode.INVALID_FUNCTION_ARGUMENT;
+
+// Filter that all drivers of a task insert into at the same time, looked up by the task and a name. The
+// drivers using a filter are counted and the last one to release it gets the filter, the others get nothing.
+// This way a worker sends one partial filter per task instead of one per driver.
+//
+// Functions know nothing about the task they run in, so the task is taken from the name of the split
+// runner thread, which holds <query id>.<stage id>.<task id> next to the split and the runner. Only the
+// task id is looked for, so other parts of the name may change. Drivers on threads without a task id get a
+// filter of their own, like groups of a grouped aggregation, see SharedBloomFilterAggregation. Filters are
+// only held weakly here, so the filters of cancelled drivers that never release them are collected with
+// their state.
+//
+// The memory of the filter is charged once, to the first driver that asks for it, see charge.
+//
+// Drivers that only start after the filter was released create a new one, which is harmless as merging
+// filters is idempotent.
+public final class SharedBloomFilter
+{
+    private static final Pattern TASK_ID = Pattern.compile("(?<![\\w.])\\d{8}_\\d{6}_\\d+_[a-z0-9]+\\.\\d+\\.\\d+(?![\\w.])");
+    private static final Cache<String, SharedBloomFilter> FILTERS = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
+
+    private final String key;
+    private final long expectedInsertions;
+    private final double falsePositivePercentage;
+    private final BloomFilterBitSet.Concurrent preBitSet;
+    private final BloomFilterBitSet.Concurrent bitSet;
+    private int users;
+    private boolean charged;
+
+    private SharedBloomFilter(String key, long expectedInsertions, double falsePositivePercentage)
+    {
+        this.key = key;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositivePercentage = falsePositivePercentage;
+        this.preBitSet = BloomFilterBitSet.newConcurrent(BloomFilter.preFilterInsertions(expectedInsertions), BloomFilter.preFilterFalsePositivePercentage(falsePositivePercentage), 1);
+        this.bitSet = BloomFilterBitSet.newConcurrent(expectedInsertions, falsePositivePercentage);
+    }
+
+    public static SharedBloomFilter acquire(String name, long expectedInsertions, double falsePositivePercentage)
+    {
+        BloomFilter.checkExpectedInsertions(expectedInsertions);
+        String task = getTask(Thread.currentThread().getName());
+        if (task == null) {
+            return acquireUnshared(expectedInsertions, falsePositivePercentage);
+        }
+        String key = task + "/" + name;
+        synchronized (FILTERS) {
+            SharedBloomFilter shared = FILTERS.getIfPresent(key);
+            if (shared == null) {
+                shared = new SharedBloomFilter(key, expectedInsertions, falsePositivePercentage);
+                FILTERS.put(key, shared);
+            }
+            else if (shared.expectedInsertions != expectedInsertions || shared.falsePositivePercentage != falsePositivePercentage) {
+                throw new PrestoException(INVALID_FUNCTION_ARGUMENT, "Shared bloom filter " + name + " is already used with other parameters");
+            }
+            shared.users++;
+            return shared;
+        }
+    }
+
+    // Filter of a single user
+    public static SharedBloomFilter acquireUnshared(long expectedInsertions, double falsePositivePercentage)
+    {
+        BloomFilter.checkExpectedInsertions(expectedInsertions);
+        SharedBloomFilter shared = new SharedBloomFilter(null, expectedInsertions, falsePositivePercentage);
+        shared.users++;
+        return shared;
+    }
+
+    // Task of the split runner thread with the given name, null for other threads
+    static String getTask(String threadName)
+    {
+        Matcher matcher = TASK_ID.matcher(threadName);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    public void put(Slice s)
+    {
+        if (s == null || s.length() < 1) {
+            return;
+        }
+        long hash = XxHash64.hash(s);
+        bitSet.put(hash);
+        preBitSet.put(hash);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        return bitSet.getSizeInBytes() + preBitSet.getSizeInBytes();
+    }
+
+    // Memory to account for the filter, its size for the first user asking and 0 for the others. The first
+    // user keeps accounting for it until it is done, the filter is in use until then or released to a copy.
+    public int charge()
+    {
+        synchronized (FILTERS) {
+            if (charged) {
+                return 0;
+            }
+            charged = true;
+            return estimatedInMemorySize();
+        }
+    }
+
+    // What was inserted so far, including everything the calling driver inserted
+    public BloomFilter snapshot()
+    {
+        return BloomFilter.newInstance(expectedInsertions, falsePositivePercentage, preBitSet.snapshot(), bitSet.snapshot());
+    }
+
+    // Release one use, returns the filter to the last user and null to the others. Inserts of every user
+    // happen before their release, so the last user sees all of them.
+    public BloomFilter release()
+    {
+        synchronized (FILTERS) {
+            if (users <= 0) {
+                throw new IllegalStateException("Shared bloom filter " + key + " is not in use");
+            }
+            if (--users > 0) {
+                return null;
+            }
+            if (key != null && FILTERS.getIfPresent(key) == this) {
+                FILTERS.invalidate(key);
+            }
+        }
+        return snapshot();
+    }
+
+    public static long size()
+    {
+        synchronized (FILTERS) {
+            FILTERS.cleanUp();
+            return FILTERS.size();
+        }
+    }
+}
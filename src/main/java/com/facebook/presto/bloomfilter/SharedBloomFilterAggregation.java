@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.CombineFunction;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.OutputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+// Like bloom_filter, but all drivers of a task insert into one filter with the given name. Group ids are
+// local to a driver, so the groups of a grouped aggregation can not be matched across drivers and each gets
+// a filter of its own, whatever its name.
+@AggregationFunction(value = "bloom_filter_shared")
+public class SharedBloomFilterAggregation
+{
+    private SharedBloomFilterAggregation()
+    {
+    }
+
+    @InputFunction
+    public static void input(
+            SharedBloomFilterState state,
+            @SqlType(StandardTypes.VARCHAR) Slice slice,
+            @SqlType(StandardTypes.VARCHAR) Slice name)
+    {
+        getOrAcquire(state, name, BloomFilter.DEFAULT_BLOOM_FILTER_EXPECTED_INSERTIONS, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE).put(slice);
+    }
+
+    @InputFunction
+    public static void input(
+            SharedBloomFilterState state,
+            @SqlType(StandardTypes.VARCHAR) Slice slice,
+            @SqlType(StandardTypes.VARCHAR) Slice name,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions)
+    {
+        getOrAcquire(state, name, expectedInsertions, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE).put(slice);
+    }
+
+    @InputFunction
+    public static void input(
+            SharedBloomFilterState state,
+            @SqlType(StandardTypes.VARCHAR) Slice slice,
+            @SqlType(StandardTypes.VARCHAR) Slice name,
+            @SqlType(StandardTypes.BIGINT) long expectedInsertions,
+            @SqlType(StandardTypes.DOUBLE) double falsePositivePercentage)
+    {
+        getOrAcquire(state, name, expectedInsertions, falsePositivePercentage).put(slice);
+    }
+
+    private static SharedBloomFilter getOrAcquire(SharedBloomFilterState state, Slice name, long expectedInsertions, double falsePositivePercentage)
+    {
+        SharedBloomFilter shared = state.getSharedBloomFilter();
+        if (shared == null) {
+            if (state instanceof GroupedAccumulatorState) {
+                shared = SharedBloomFilter.acquireUnshared(expectedInsertions, falsePositivePercentage);
+            }
+            else {
+                shared = SharedBloomFilter.acquire(name.toStringUtf8(), expectedInsertions, falsePositivePercentage);
+            }
+            state.setSharedBloomFilter(shared);
+            state.addMemoryUsage(shared.charge());
+        }
+        return shared;
+    }
+
+    // Release the shared filter of the state, the filter is merged into the state when this was its last
+    // user. Returns the filter of the state, if any.
+    public static BloomFilter release(SharedBloomFilterState state)
+    {
+        SharedBloomFilter shared = state.getSharedBloomFilter();
+        if (shared != null) {
+            state.setSharedBloomFilter(null);
+            BloomFilter released = shared.release();
+            if (released != null) {
+                putAll(state, released);
+            }
+        }
+        return state.getBloomFilter();
+    }
+
+    private static void putAll(SharedBloomFilterState state, BloomFilter other)
+    {
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
+            state.setBloomFilter(other);
+            state.addMemoryUsage(other.estimatedInMemorySize());
+            return;
+        }
+        state.setBloomFilter(bf.putAll(other));
+    }
+
+    @CombineFunction
+    public static void combine(SharedBloomFilterState state, SharedBloomFilterState otherState)
+    {
+        // Drivers that were not the last to release a filter send nothing
+        BloomFilter other = release(otherState);
+        if (other != null) {
+            putAll(state, other);
+        }
+    }
+
+    @OutputFunction(BloomFilterType.TYPE)
+    public static void output(SharedBloomFilterState state, BlockBuilder out)
+    {
+        SharedBloomFilter shared = state.getSharedBloomFilter();
+        if (shared != null) {
+            // Without a partial step other drivers may still use the filter, what was inserted so far
+            // includes everything this driver inserted
+            state.setSharedBloomFilter(null);
+            BloomFilter released = shared.release();
+            putAll(state, released != null ? released : shared.snapshot());
+        }
+        BloomFilter bf = state.getBloomFilter();
+        if (bf == null) {
+            bf = BloomFilter.newInstance();
+        }
+        BloomFilterType.BLOOM_FILTER.writeSlice(out, bf.serialize());
+    }
+}
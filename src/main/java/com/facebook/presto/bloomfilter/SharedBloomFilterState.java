@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.function.AccumulatorState;
+import com.facebook.presto.spi.function.AccumulatorStateMetadata;
+
+@AccumulatorStateMetadata(stateSerializerClass = SharedBloomFilterStateSerializer.class, stateFactoryClass = SharedBloomFilterStateFactory.class)
+public interface SharedBloomFilterState extends AccumulatorState
+{
+    // Filter shared with the other drivers of this worker, until it is released
+    SharedBloomFilter getSharedBloomFilter();
+
+    void setSharedBloomFilter(SharedBloomFilter value);
+
+    // Filter of the released and combined states
+    BloomFilter getBloomFilter();
+
+    void setBloomFilter(BloomFilter value);
+
+    void addMemoryUsage(int value);
+}
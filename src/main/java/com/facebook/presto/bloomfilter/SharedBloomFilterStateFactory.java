@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.array.ObjectBigArray;
+import com.facebook.presto.spi.function.AccumulatorStateFactory;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+
+public class SharedBloomFilterStateFactory implements AccumulatorStateFactory<SharedBloomFilterState>
+{
+    @Override
+    public SharedBloomFilterState createSingleState()
+    {
+        return new SingleSharedBloomFilterState();
+    }
+
+    @Override
+    public Class<? extends SharedBloomFilterState> getSingleStateClass()
+    {
+        return SingleSharedBloomFilterState.class;
+    }
+
+    @Override
+    public SharedBloomFilterState createGroupedState()
+    {
+        return new GroupedSharedBloomFilterState();
+    }
+
+    @Override
+    public Class<? extends SharedBloomFilterState> getGroupedStateClass()
+    {
+        return GroupedSharedBloomFilterState.class;
+    }
+
+    public static class GroupedSharedBloomFilterState
+            implements GroupedAccumulatorState, SharedBloomFilterState
+    {
+        private final ObjectBigArray<SharedBloomFilter> shared = new ObjectBigArray<>();
+        private final ObjectBigArray<BloomFilter> bfs = new ObjectBigArray<>();
+        private long groupId;
+        private long size;
+
+        @Override
+        public void ensureCapacity(long size)
+        {
+            shared.ensureCapacity(size);
+            bfs.ensureCapacity(size);
+        }
+
+        @Override
+        public void setGroupId(long groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public SharedBloomFilter getSharedBloomFilter()
+        {
+            return shared.get(groupId);
+        }
+
+        @Override
+        public void setSharedBloomFilter(SharedBloomFilter value)
+        {
+            shared.set(groupId, value);
+        }
+
+        @Override
+        public BloomFilter getBloomFilter()
+        {
+            return bfs.get(groupId);
+        }
+
+        @Override
+        public void setBloomFilter(BloomFilter value)
+        {
+            bfs.set(groupId, value);
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            size += value;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return size + shared.sizeOf() + bfs.sizeOf();
+        }
+    }
+
+    public static class SingleSharedBloomFilterState
+            implements SharedBloomFilterState
+    {
+        private SharedBloomFilter shared;
+        private BloomFilter bf;
+        private long size;
+
+        @Override
+        public SharedBloomFilter getSharedBloomFilter()
+        {
+            return shared;
+        }
+
+        @Override
+        public void setSharedBloomFilter(SharedBloomFilter value)
+        {
+            shared = value;
+        }
+
+        @Override
+        public BloomFilter getBloomFilter()
+        {
+            return bf;
+        }
+
+        @Override
+        public void setBloomFilter(BloomFilter value)
+        {
+            bf = value;
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            size += value;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return size;
+        }
+    }
+}
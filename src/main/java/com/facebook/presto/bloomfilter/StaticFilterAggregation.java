@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.function.AggregationFunction;
+import com.facebook.presto.spi.function.CombineFunction;
+import com.facebook.presto.spi.function.InputFunction;
+import com.facebook.presto.spi.function.OutputFunction;
+import com.facebook.presto.spi.function.SqlType;
+import com.facebook.presto.spi.type.StandardTypes;
+import io.airlift.slice.Slice;
+
+import static com.facebook.presto.spi.type.StandardTypes.VARCHAR;
+
+// Partial states only collect key hashes, the immutable filter is built once in the final output
+@AggregationFunction(value = "static_filter")
+public class StaticFilterAggregation
+{
+    private StaticFilterAggregation()
+    {
+    }
+
+    public static StaticFilterBuilder getOrCreateStaticFilterBuilder(StaticFilterState state, double falsePositivePercentage)
+    {
+        StaticFilterBuilder builder = state.getStaticFilterBuilder();
+        if (builder == null) {
+            builder = new StaticFilterBuilder(falsePositivePercentage);
+            state.setStaticFilterBuilder(builder);
+            state.addMemoryUsage(builder.estimatedInMemorySize());
+        }
+        return builder;
+    }
+
+    @InputFunction
+    public static void input(
+            StaticFilterState state,
+            @SqlType(VARCHAR) Slice slice)
+    {
+        input(state, slice, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+    }
+
+    @InputFunction
+    public static void input(
+            StaticFilterState state,
+            @SqlType(VARCHAR) Slice slice,
+            @SqlType(StandardTypes.DOUBLE) double falsePositivePercentage)
+    {
+        StaticFilterBuilder builder = getOrCreateStaticFilterBuilder(state, falsePositivePercentage);
+        int before = builder.estimatedInMemorySize();
+        builder.put(slice);
+        state.addMemoryUsage(builder.estimatedInMemorySize() - before);
+    }
+
+    @CombineFunction
+    public static void combine(StaticFilterState state, StaticFilterState otherState)
+    {
+        StaticFilterBuilder other = otherState.getStaticFilterBuilder();
+        if (other == null) {
+            return;
+        }
+        StaticFilterBuilder builder = state.getStaticFilterBuilder();
+        if (builder == null) {
+            state.setStaticFilterBuilder(other);
+            state.addMemoryUsage(other.estimatedInMemorySize());
+            return;
+        }
+        int before = builder.estimatedInMemorySize();
+        builder.putAll(other);
+        state.addMemoryUsage(builder.estimatedInMemorySize() - before);
+    }
+
+    @OutputFunction(BloomFilterType.TYPE)
+    public static void output(StaticFilterState state, BlockBuilder out)
+    {
+        StaticFilterBuilder builder = getOrCreateStaticFilterBuilder(state, BloomFilter.DEFAULT_BLOOM_FILTER_FALSE_POSITIVE_PERCENTAGE);
+        BloomFilterType.BLOOM_FILTER.writeSlice(out, builder.build().serialize());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+
+import java.util.Arrays;
+
+// Collects the key hashes of a static filter until the final output builds the immutable filter.
+//
+// Layout is <falsePositivePercentage>:<count>:<hashes>, where
+//   falsePositivePercentage: is a double describing the desired false positive percentage
+//   count: is an int describing the amount of key hashes
+//   hashes: are the 64 bit key hashes
+public class StaticFilterBuilder
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double falsePositivePercentage;
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int count;
+
+    public StaticFilterBuilder(double falsePositivePercentage)
+    {
+        this.falsePositivePercentage = falsePositivePercentage;
+    }
+
+    public double getFalsePositivePercentage()
+    {
+        return falsePositivePercentage;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public StaticFilterBuilder put(Slice s)
+    {
+        if (s == null || s.length() < 1) {
+            return this;
+        }
+        add(XxHash64.hash(s));
+        return this;
+    }
+
+    public StaticFilterBuilder putAll(StaticFilterBuilder other)
+    {
+        ensureCapacity(count + other.count);
+        System.arraycopy(other.hashes, 0, hashes, count, other.count);
+        count += other.count;
+        return this;
+    }
+
+    public BloomFilter build()
+    {
+        XorFilter filter = XorFilter.build(hashes, count, XorFilter.fingerprintBits(falsePositivePercentage));
+        return BloomFilter.newInstance(filter);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        return hashes.length * 8;
+    }
+
+    public Slice serialize()
+    {
+        // Partial states only need to ship distinct hashes
+        compact();
+
+        DynamicSliceOutput output = new DynamicSliceOutput(12 + count * 8);
+        output.appendDouble(falsePositivePercentage);
+        output.appendInt(count);
+        for (int i = 0; i < count; i++) {
+            output.appendLong(hashes[i]);
+        }
+        return output.slice();
+    }
+
+    public static StaticFilterBuilder newInstance(Slice serialized)
+    {
+        BasicSliceInput input = serialized.getInput();
+        StaticFilterBuilder builder = new StaticFilterBuilder(input.readDouble());
+        int count = input.readInt();
+        builder.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            builder.hashes[i] = input.readLong();
+        }
+        builder.count = count;
+        return builder;
+    }
+
+    private void add(long hash)
+    {
+        ensureCapacity(count + 1);
+        hashes[count++] = hash;
+    }
+
+    private void compact()
+    {
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || hashes[distinct - 1] != hashes[i]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        count = distinct;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.max(capacity, hashes.length * 2));
+        }
+    }
+}
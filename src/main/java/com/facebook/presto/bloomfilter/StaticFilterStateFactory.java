@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.array.ObjectBigArray;
+import com.facebook.presto.spi.function.AccumulatorStateFactory;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+
+import java.util.Objects;
+
+public class StaticFilterStateFactory implements AccumulatorStateFactory<StaticFilterState>
+{
+    @Override
+    public StaticFilterState createSingleState()
+    {
+        return new SingleStaticFilterState();
+    }
+
+    @Override
+    public Class<? extends StaticFilterState> getSingleStateClass()
+    {
+        return SingleStaticFilterState.class;
+    }
+
+    @Override
+    public StaticFilterState createGroupedState()
+    {
+        return new GroupedStaticFilterState();
+    }
+
+    @Override
+    public Class<? extends StaticFilterState> getGroupedStateClass()
+    {
+        return GroupedStaticFilterState.class;
+    }
+
+    public static class GroupedStaticFilterState
+            implements GroupedAccumulatorState, StaticFilterState
+    {
+        private final ObjectBigArray<StaticFilterBuilder> builders = new ObjectBigArray<>();
+        private long groupId;
+        private long size;
+
+        @Override
+        public void ensureCapacity(long size)
+        {
+            builders.ensureCapacity(size);
+        }
+
+        @Override
+        public void setGroupId(long groupId)
+        {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public StaticFilterBuilder getStaticFilterBuilder()
+        {
+            return builders.get(groupId);
+        }
+
+        @Override
+        public void setStaticFilterBuilder(StaticFilterBuilder value)
+        {
+            Objects.requireNonNull(value, "value is null");
+            builders.set(groupId, value);
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            size += value;
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return size + builders.sizeOf();
+        }
+    }
+
+    public static class SingleStaticFilterState
+            implements StaticFilterState
+    {
+        private StaticFilterBuilder builder;
+
+        @Override
+        public StaticFilterBuilder getStaticFilterBuilder()
+        {
+            return builder;
+        }
+
+        @Override
+        public void setStaticFilterBuilder(StaticFilterBuilder value)
+        {
+            builder = value;
+        }
+
+        @Override
+        public void addMemoryUsage(int value)
+        {
+            // noop
+        }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            if (builder == null) {
+                return 0;
+            }
+            return builder.estimatedInMemorySize();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+
+import java.util.Arrays;
+
+// Immutable xor filter (Graf & Lemire, "Xor Filters: Faster and Smaller Than Bloom and Cuckoo Filters")
+// built once from a set of 64 bit key hashes. A lookup reads exactly three fingerprints, one from each
+// block, and the false positive probability is 2^-fingerprintBits.
+//
+// Layout is <fingerprintBits>:<seed>:<blockLength>:<size>:<words>:<fingerprints>, where
+//   fingerprintBits: is an int describing the width of a single fingerprint
+//   seed: is a long used to mix the key hashes, picked during construction
+//   blockLength: is an int describing the amount of fingerprints in each of the three blocks
+//   size: is an int describing the amount of distinct keys in the filter
+//   words: is an int describing the amount of longs holding the packed fingerprints
+//   fingerprints: are the packed fingerprints
+public final class XorFilter
+{
+    private static final int MAX_BUILD_ATTEMPTS = 100;
+    private static final int MAX_FINGERPRINT_BITS = 32;
+
+    private final int fingerprintBits;
+    private final long seed;
+    private final int blockLength;
+    private final int size;
+    private final long[] fingerprints;
+
+    private XorFilter(int fingerprintBits, long seed, int blockLength, int size, long[] fingerprints)
+    {
+        this.fingerprintBits = fingerprintBits;
+        this.seed = seed;
+        this.blockLength = blockLength;
+        this.size = size;
+        this.fingerprints = fingerprints;
+    }
+
+    public static int fingerprintBits(double falsePositivePercentage)
+    {
+        int bits = (int) Math.ceil(-Math.log(falsePositivePercentage) / Math.log(2));
+        return Math.max(1, Math.min(MAX_FINGERPRINT_BITS, bits));
+    }
+
+    // Note: sorts the given key hashes in place
+    public static XorFilter build(long[] keyHashes, int count, int fingerprintBits)
+    {
+        // Duplicate keys can never be peeled, so only keep distinct hashes
+        Arrays.sort(keyHashes, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || keyHashes[size - 1] != keyHashes[i]) {
+                keyHashes[size++] = keyHashes[i];
+            }
+        }
+
+        int blockLength = (32 + (int) Math.ceil(1.23 * size)) / 3;
+        int arrayLength = blockLength * 3;
+        long[] reverseOrder = new long[size];
+        byte[] reverseH = new byte[size];
+        long[] t2 = new long[arrayLength];
+        int[] t2count = new int[arrayLength];
+        int[] alone = new int[arrayLength];
+
+        long seed = 0;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == MAX_BUILD_ATTEMPTS) {
+                throw new IllegalStateException("Unable to build xor filter for " + size + " keys");
+            }
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            Arrays.fill(t2, 0);
+            Arrays.fill(t2count, 0);
+
+            for (int i = 0; i < size; i++) {
+                long hash = mix(keyHashes[i] + seed);
+                for (int hi = 0; hi < 3; hi++) {
+                    int h = getHash(hash, hi, blockLength);
+                    t2[h] ^= hash;
+                    t2count[h]++;
+                }
+            }
+
+            // Peel the slots that are referenced by a single key
+            int qi = 0;
+            for (int i = 0; i < arrayLength; i++) {
+                if (t2count[i] == 1) {
+                    alone[qi++] = i;
+                }
+            }
+            int reverseOrderPos = 0;
+            while (qi > 0) {
+                int i = alone[--qi];
+                if (t2count[i] == 0) {
+                    continue;
+                }
+                long hash = t2[i];
+                byte found = -1;
+                for (int hi = 0; hi < 3; hi++) {
+                    int h = getHash(hash, hi, blockLength);
+                    int newCount = --t2count[h];
+                    if (newCount == 0) {
+                        found = (byte) hi;
+                    }
+                    else {
+                        if (newCount == 1) {
+                            alone[qi++] = h;
+                        }
+                        t2[h] ^= hash;
+                    }
+                }
+                reverseOrder[reverseOrderPos] = hash;
+                reverseH[reverseOrderPos] = found;
+                reverseOrderPos++;
+            }
+            if (reverseOrderPos == size) {
+                break;
+            }
+        }
+
+        // Assign fingerprints in reverse peeling order
+        long[] fingerprints = new long[words(arrayLength, fingerprintBits)];
+        long mask = fingerprintMask(fingerprintBits);
+        for (int i = size - 1; i >= 0; i--) {
+            long hash = reverseOrder[i];
+            int found = reverseH[i];
+            long xor = fingerprint(hash) & mask;
+            int change = -1;
+            for (int hi = 0; hi < 3; hi++) {
+                int h = getHash(hash, hi, blockLength);
+                if (hi == found) {
+                    change = h;
+                }
+                else {
+                    xor ^= read(fingerprints, h, fingerprintBits);
+                }
+            }
+            write(fingerprints, change, fingerprintBits, xor);
+        }
+        return new XorFilter(fingerprintBits, seed, blockLength, size, fingerprints);
+    }
+
+    public boolean mightContain(long keyHash)
+    {
+        long hash = mix(keyHash + seed);
+        long f = fingerprint(hash) & fingerprintMask(fingerprintBits);
+        f ^= read(fingerprints, getHash(hash, 0, blockLength), fingerprintBits);
+        f ^= read(fingerprints, getHash(hash, 1, blockLength), fingerprintBits);
+        f ^= read(fingerprints, getHash(hash, 2, blockLength), fingerprintBits);
+        return f == 0;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getFingerprintBits()
+    {
+        return fingerprintBits;
+    }
+
+    public double getFalsePositivePercentage()
+    {
+        return Math.pow(2.0, -fingerprintBits);
+    }
+
+    public int estimatedInMemorySize()
+    {
+        return fingerprints.length * 8;
+    }
+
+    public void writeTo(SliceOutput output)
+    {
+        output.appendInt(fingerprintBits);
+        output.appendLong(seed);
+        output.appendInt(blockLength);
+        output.appendInt(size);
+        output.appendInt(fingerprints.length);
+        for (long word : fingerprints) {
+            output.appendLong(word);
+        }
+    }
+
+    public static XorFilter readFrom(SliceInput input)
+    {
+        int fingerprintBits = input.readInt();
+        long seed = input.readLong();
+        int blockLength = input.readInt();
+        int size = input.readInt();
+        int words = input.readInt();
+        if (fingerprintBits < 1 || fingerprintBits > MAX_FINGERPRINT_BITS || blockLength < 1 || blockLength > Integer.MAX_VALUE / 3 || size < 0 || words != words(blockLength * 3, fingerprintBits) || words > input.available() / 8) {
+            throw new IllegalArgumentException("Corrupt xor filter of " + words + " words");
+        }
+        long[] fingerprints = new long[words];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = input.readLong();
+        }
+        return new XorFilter(fingerprintBits, seed, blockLength, size, fingerprints);
+    }
+
+    private static int words(int arrayLength, int fingerprintBits)
+    {
+        // One extra word so a fingerprint spanning two words can always be read
+        return (int) (((long) arrayLength * fingerprintBits + 63) >>> 6) + 1;
+    }
+
+    private static long fingerprintMask(int fingerprintBits)
+    {
+        return (1L << fingerprintBits) - 1;
+    }
+
+    private static long read(long[] fingerprints, int index, int fingerprintBits)
+    {
+        long bit = (long) index * fingerprintBits;
+        int word = (int) (bit >>> 6);
+        int offset = (int) (bit & 63);
+        long value = fingerprints[word] >>> offset;
+        if (offset + fingerprintBits > 64) {
+            value |= fingerprints[word + 1] << (64 - offset);
+        }
+        return value & fingerprintMask(fingerprintBits);
+    }
+
+    private static void write(long[] fingerprints, int index, int fingerprintBits, long value)
+    {
+        // Every slot is assigned at most once, so OR-ing into the zeroed words is enough
+        long bit = (long) index * fingerprintBits;
+        int word = (int) (bit >>> 6);
+        int offset = (int) (bit & 63);
+        fingerprints[word] |= value << offset;
+        if (offset + fingerprintBits > 64) {
+            fingerprints[word + 1] |= value >>> (64 - offset);
+        }
+    }
+
+    private static int getHash(long hash, int index, int blockLength)
+    {
+        long r = Long.rotateLeft(hash, index * 21);
+        return reduce((int) r, blockLength) + index * blockLength;
+    }
+
+    private static int reduce(int hash, int n)
+    {
+        return (int) (((hash & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    private static long fingerprint(long hash)
+    {
+        return hash ^ (hash >>> 32);
+    }
+
+    private static long mix(long x)
+    {
+        // Murmur3 finalizer
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings("MethodMayBeStatic")
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkBloomFilter
+{
+    private static final int KEYS = 1024;
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public BloomFilter put(BenchmarkData data)
+    {
+        BloomFilter bf = data.getBloomFilter();
+        for (Slice key : data.getMissKeys()) {
+            bf.put(key);
+        }
+        return bf;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void mightContainHit(BenchmarkData data, Blackhole blackhole)
+    {
+        BloomFilter bf = data.getBloomFilter();
+        for (Slice key : data.getHitKeys()) {
+            blackhole.consume(bf.mightContain(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void mightContainMiss(BenchmarkData data, Blackhole blackhole)
+    {
+        BloomFilter bf = data.getBloomFilter();
+        for (Slice key : data.getMissKeys()) {
+            blackhole.consume(bf.mightContain(key));
+        }
+    }
+
+    @Benchmark
+    public Slice serialize(BenchmarkData data)
+    {
+        // Unchanged filters are not serialized again, so add a key first
+        BloomFilter bf = data.getBloomFilter();
+        bf.put(data.getHitKeys()[0]);
+        return bf.serialize();
+    }
+
+    @Benchmark
+    public BloomFilter deserialize(BenchmarkData data)
+    {
+        return BloomFilter.newInstance(data.getSerialized());
+    }
+
+    @Benchmark
+    public BloomFilter putAll(BenchmarkData data)
+    {
+        return data.getBloomFilter().putAll(data.getOther());
+    }
+
+    @Benchmark
+    public BloomFilter base64RoundTrip(BenchmarkData data)
+    {
+        return BloomFilter.newInstance(data.getBloomFilter().toBase64());
+    }
+
+    @Benchmark
+    public BloomFilter getOrLoadBloomFilterCacheHit(BenchmarkData data)
+    {
+        return BloomFilterScalarFunctions.getOrLoadBloomFilter(data.getSerialized());
+    }
+
+    @State(Scope.Thread)
+    public static class BenchmarkData
+    {
+        @Param({"10000", "1000000", "10000000"})
+        private int expectedInsertions = 10000;
+
+        @Param({"0.01", "0.001"})
+        private double falsePositivePercentage = 0.01;
+
+        private BloomFilter bloomFilter;
+        private BloomFilter other;
+        private Slice serialized;
+        private final Slice[] hitKeys = new Slice[KEYS];
+        private final Slice[] missKeys = new Slice[KEYS];
+
+        @Setup
+        public void setup()
+        {
+            Random random = new Random(42);
+            bloomFilter = BloomFilter.newInstance(expectedInsertions, falsePositivePercentage);
+            other = BloomFilter.newInstance(expectedInsertions, falsePositivePercentage);
+
+            // Fill both filters to half of their capacity
+            for (int i = 0; i < expectedInsertions / 2; i++) {
+                Slice key = Slices.utf8Slice("key-" + i);
+                bloomFilter.put(key);
+                other.put(Slices.utf8Slice("other-" + i));
+                if (i < KEYS) {
+                    hitKeys[i] = key;
+                }
+            }
+            for (int i = 0; i < KEYS; i++) {
+                missKeys[i] = Slices.utf8Slice("miss-" + random.nextLong());
+            }
+            serialized = bloomFilter.serialize();
+        }
+
+        public BloomFilter getBloomFilter()
+        {
+            return bloomFilter;
+        }
+
+        public BloomFilter getOther()
+        {
+            return other;
+        }
+
+        public Slice getSerialized()
+        {
+            return serialized;
+        }
+
+        public Slice[] getHitKeys()
+        {
+            return hitKeys;
+        }
+
+        public Slice[] getMissKeys()
+        {
+            return missKeys;
+        }
+    }
+
+    public static void main(String[] args)
+            throws Throwable
+    {
+        // assure the benchmarks are valid before running
+        BenchmarkData data = new BenchmarkData();
+        data.setup();
+        new BenchmarkBloomFilter().deserialize(data);
+
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkBloomFilter.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -13,6 +13,10 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.block.Block;
+import com.facebook.presto.spi.block.BlockBuilder;
+import com.facebook.presto.spi.block.BlockBuilderStatus;
 import com.google.common.hash.HashCode;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
@@ -20,10 +24,14 @@ import org.testng.annotations.Test;
 
 import java.util.Date;
 
+import static com.facebook.presto.spi.type.BigintType.BIGINT;
+import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
+import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
 
 public class TestBloomFilter
 {
@@ -43,6 +51,41 @@ public class TestBloomFilter
         assertFalse(bf.mightContain(Slices.wrappedBuffer("verlangen".getBytes())));
     }
 
+    @Test
+    public void testBloomFilterContainsBlock()
+    {
+        BloomFilter bf = BloomFilter.newInstance();
+        bf.put(Slices.wrappedBuffer("robin".getBytes()));
+        BloomFilter bfPartitioned = BloomFilter.newPartitionedInstance(1000, 0.01, 4);
+        bfPartitioned.put(Slices.wrappedBuffer("robin".getBytes()));
+
+        BlockBuilder blockBuilder = VARCHAR.createBlockBuilder(new BlockBuilderStatus(), 3);
+        VARCHAR.writeSlice(blockBuilder, Slices.utf8Slice("robin"));
+        blockBuilder.appendNull();
+        VARCHAR.writeSlice(blockBuilder, Slices.utf8Slice("verlangen"));
+        Block block = blockBuilder.build();
+
+        assertEquals(bf.mightContain(block), new boolean[] {true, false, false});
+        assertEquals(bfPartitioned.mightContain(block), new boolean[] {true, false, false});
+    }
+
+    @Test
+    public void testBloomFilterProbe()
+    {
+        BloomFilter bfA = BloomFilter.newInstance(1000, 0.01);
+        bfA.put(Slices.wrappedBuffer("robin".getBytes()));
+        BloomFilter bfB = BloomFilter.newInstance(1000, 0.01);
+        bfB.put(Slices.wrappedBuffer("verlangen".getBytes()));
+        BloomFilter bfStatic = new StaticFilterBuilder(0.01).put(Slices.utf8Slice("robin")).build();
+
+        // The same probe is used for all filters
+        BloomFilterProbe probe = new BloomFilterProbe(Slices.utf8Slice("robin"));
+        assertTrue(bfA.mightContain(probe));
+        assertFalse(bfB.mightContain(probe));
+        assertTrue(bfStatic.mightContain(probe));
+        assertTrue(bfA.mightContain(probe));
+    }
+
     @Test
     public void testBloomFilterMerge()
     {
@@ -59,6 +102,56 @@ public class TestBloomFilter
         assertTrue(bf.mightContain(Slices.wrappedBuffer("verlangen".getBytes())));
     }
 
+    @Test
+    public void testBloomFilterMergeLegacy()
+    {
+        BloomFilter legacy = BloomFilter.newLegacyInstance(1000, 0.01);
+        legacy.put(Slices.utf8Slice("robin"));
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("verlangen"));
+
+        // Both ways around, the legacy filter is kept next to the bitsets
+        BloomFilter merged = BloomFilter.newInstance(legacy.serialize()).putAll(bf);
+        BloomFilter mergedOther = bf.copy().putAll(legacy);
+        for (BloomFilter result : new BloomFilter[] {merged, mergedOther, BloomFilter.newInstance(merged.serialize())}) {
+            assertTrue(result.hasLegacy());
+            assertTrue(result.mightContain(Slices.utf8Slice("robin")));
+            assertTrue(result.mightContain(Slices.utf8Slice("verlangen")));
+            assertTrue(result.mightContain(new BloomFilterProbe(Slices.utf8Slice("robin"))));
+            assertFalse(result.mightContain(Slices.utf8Slice("not-in-the-list")));
+        }
+        assertEquals(merged.serialize(), mergedOther.serialize());
+
+        // Later merges OR into both parts
+        BloomFilter next = BloomFilter.newInstance(1000, 0.01);
+        next.put(Slices.utf8Slice("presto"));
+        merged.putAll(next.serialize());
+        assertTrue(merged.mightContain(Slices.utf8Slice("presto")));
+        assertTrue(merged.mightContain(Slices.utf8Slice("robin")));
+        assertFalse(bf.hasLegacy());
+        assertFalse(bf.mightContain(Slices.utf8Slice("robin")));
+    }
+
+    @Test
+    public void testMergeSerializedIncompatibleLeavesFilter()
+    {
+        // Both get pre filters of 10 insertions, only the filters themselves differ
+        BloomFilter bf = BloomFilter.newInstance(50, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice before = Slices.copyOf(bf.serialize());
+        BloomFilter other = BloomFilter.newInstance(60, 0.01);
+        other.put(Slices.utf8Slice("verlangen"));
+        try {
+            bf.putAll(other.serialize());
+            fail("expected filters with other parameters to be rejected");
+        }
+        catch (PrestoException ex) {
+            assertTrue(ex.getMessage().contains("same parameters"), ex.getMessage());
+        }
+        assertEquals(bf.serialize(), before);
+        assertFalse(bf.mightContain(Slices.utf8Slice("verlangen")));
+    }
+
     @Test
     public void testBloomFilterHash()
     {
@@ -77,6 +170,49 @@ public class TestBloomFilter
         assertEquals(b, c);
     }
 
+    @Test
+    public void testBloomFilterIncrementalHash()
+    {
+        BloomFilter bf = BloomFilter.newInstance(100000);
+        BloomFilter other = BloomFilter.newInstance(100000);
+        for (int i = 0; i < 1000; i++) {
+            bf.put(Slices.utf8Slice("key" + i));
+            other.put(Slices.utf8Slice("key" + (999 - i)));
+        }
+
+        // Unchanged filters are not serialized again
+        Slice s = bf.serialize();
+        assertTrue(s == bf.serialize());
+        assertEquals(BloomFilter.readHash(s), BloomFilter.readHash(other.serialize()));
+
+        // Only the changed blocks are hashed again, which yields the same hash as hashing all of them
+        bf.put(Slices.utf8Slice("robin"));
+        BloomFilter loaded = BloomFilter.newInstance(s);
+        loaded.put(Slices.utf8Slice("robin"));
+        assertFalse(BloomFilter.readHash(bf.serialize()).equals(BloomFilter.readHash(s)));
+        assertEquals(BloomFilter.readHash(bf.serialize()), BloomFilter.readHash(loaded.serialize()));
+
+        other.putAll(BloomFilter.newInstance(bf.serialize()));
+        assertEquals(BloomFilter.readHash(other.serialize()), BloomFilter.readHash(bf.serialize()));
+
+        // Parameters are part of the hash
+        assertFalse(BloomFilter.readHash(BloomFilter.newInstance(10).serialize()).equals(BloomFilter.readHash(BloomFilter.newInstance(11).serialize())));
+    }
+
+    @Test
+    public void testBloomFilterKeyHash()
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000);
+        bf.putHash(BloomFilter.getKeyHash(Slices.utf8Slice("robin")));
+        assertTrue(bf.mightContain(Slices.utf8Slice("robin")));
+        assertFalse(bf.mightContain(Slices.utf8Slice("verlangen")));
+
+        BloomFilter bfPartitioned = BloomFilter.newPartitionedInstance(1000, 0.01, 4);
+        bfPartitioned.put(Slices.utf8Slice("robin"));
+        assertTrue(bfPartitioned.mightContainHash(BloomFilter.getKeyHash(Slices.utf8Slice("robin"))));
+        assertFalse(bfPartitioned.mightContainHash(BloomFilter.getKeyHash(Slices.utf8Slice("verlangen"))));
+    }
+
     @Test
     public void testBloomFilterSizeEstimation()
     {
@@ -108,4 +244,120 @@ public class TestBloomFilter
         long took = new Date().getTime() - start;
         assertTrue(took < 5000L);
     }
+
+    @Test
+    public void testBloomFilterStatistics()
+    {
+        BloomFilter bf = BloomFilter.newInstance(10000, 0.01);
+        BloomFilterStatistics empty = bf.getStatistics();
+        assertEquals(empty.getBitsSet(), Long.valueOf(0));
+        assertEquals(empty.getEstimatedCardinality(), 0.0);
+        assertEquals(empty.getFalsePositivePercentage(), 0.0);
+
+        for (int i = 0; i < 10000; i++) {
+            bf.put(Slices.utf8Slice("key" + i));
+        }
+        BloomFilterStatistics statistics = bf.getStatistics();
+        assertEquals(statistics.getEstimatedCardinality(), 10000, 300);
+        assertEquals(statistics.getFillRatio(), 0.5, 0.05);
+        assertTrue(statistics.getFalsePositivePercentage() > 0.001 && statistics.getFalsePositivePercentage() <= 0.01);
+
+        // Twice the expected insertions shows up as a far higher false positive percentage
+        for (int i = 10000; i < 20000; i++) {
+            bf.put(Slices.utf8Slice("key" + i));
+        }
+        assertEquals(bf.getStatistics().getEstimatedCardinality(), 20000, 600);
+        assertTrue(bf.getStatistics().getFalsePositivePercentage() > 0.1);
+
+        Block row = BloomFilterStatsScalarFunction.bloomFilterStats(bf.serialize());
+        assertEquals(BIGINT.getLong(row, 0), (long) bf.getStatistics().getBitsSet());
+        assertEquals(DOUBLE.getDouble(row, 2), bf.getStatistics().getEstimatedCardinality());
+        assertEquals(BIGINT.getLong(row, 4), bf.getStatistics().getSizeBytes());
+    }
+
+    @Test
+    public void testBloomFilterStatisticsPartitioned()
+    {
+        BloomFilter bf = BloomFilter.newPartitionedInstance(10000, 0.01, 16);
+        for (int i = 0; i < 10000; i++) {
+            bf.put(Slices.utf8Slice("key" + i));
+        }
+        BloomFilterStatistics statistics = bf.getStatistics();
+        assertEquals(statistics.getEstimatedCardinality(), 10000, 300);
+        assertTrue(statistics.getFalsePositivePercentage() < 0.02);
+    }
+
+    @Test
+    public void testBloomFilterSetOperations()
+    {
+        // a holds 0 - 19999, b holds 10000 - 29999
+        BloomFilter a = BloomFilter.newInstance(30000, 0.01);
+        BloomFilter b = BloomFilter.newInstance(30000, 0.01);
+        for (int i = 0; i < 20000; i++) {
+            a.put(Slices.utf8Slice("key" + i));
+            b.put(Slices.utf8Slice("key" + (i + 10000)));
+        }
+        assertEquals(a.estimateOverlap(b), 10000, 500);
+
+        Slice aSlice = a.serialize();
+        Slice bSlice = b.serialize();
+        BloomFilter union = BloomFilter.newInstance(BloomFilterUnionScalarFunction.bloomFilterUnion(aSlice, bSlice));
+        BloomFilter intersection = BloomFilter.newInstance(BloomFilterIntersectScalarFunction.bloomFilterIntersect(aSlice, bSlice));
+        for (int i = 0; i < 30000; i++) {
+            assertTrue(union.mightContain(Slices.utf8Slice("key" + i)));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            assertTrue(intersection.mightContain(Slices.utf8Slice("key" + i)));
+            if (intersection.mightContain(Slices.utf8Slice("key" + (i + 20000)))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1000);
+
+        // The inputs are left as they were
+        assertEquals(BloomFilterUnionScalarFunction.bloomFilterUnion(aSlice, bSlice), union.serialize());
+        assertEquals(BloomFilterEstimateOverlapScalarFunction.bloomFilterEstimateOverlap(aSlice, bSlice), a.estimateOverlap(b));
+    }
+
+    @Test
+    public void testBloomFilterLongExpectedInsertions()
+    {
+        // A high false positive percentage keeps the bitsets small
+        long expectedInsertions = 5_000_000_000L;
+        BloomFilter bf = BloomFilter.newPartitionedInstance(expectedInsertions, 0.99, 64);
+        bf.put(Slices.utf8Slice("key"));
+        BloomFilter deserialized = BloomFilter.newInstance(bf.serialize());
+        assertEquals(deserialized.getExpectedInsertions(), expectedInsertions);
+        assertTrue(deserialized.mightContain(Slices.utf8Slice("key")));
+        assertEquals(deserialized.serialize(), bf.serialize());
+
+        BloomFilter single = BloomFilter.newInstance(3_000_000_000L, 0.99);
+        single.put(Slices.utf8Slice("key"));
+        assertEquals(BloomFilter.newInstance(single.serialize()).getExpectedInsertions(), 3_000_000_000L);
+    }
+
+    @Test
+    public void testBloomFilterWidePositions()
+    {
+        long bits = BloomFilterBitSet.MAX_BITS;
+        assertTrue(BloomFilterBitSet.isWide(bits));
+        assertFalse(BloomFilterBitSet.isWide(Integer.MAX_VALUE));
+        boolean beyondInt = false;
+        for (int key = 0; key < 1000; key++) {
+            long hash = BloomFilter.getKeyHash(Slices.utf8Slice("key" + key));
+            for (int i = 1; i <= 7; i++) {
+                long position = BloomFilterBitSet.position(hash, i, bits);
+                assertTrue(position >= 0 && position < bits);
+                beyondInt |= position > Integer.MAX_VALUE;
+            }
+        }
+        assertTrue(beyondInt);
+    }
+
+    @Test(expectedExceptions = PrestoException.class)
+    public void testBloomFilterTooManyBits()
+    {
+        BloomFilter.newInstance(100_000_000_000L, 0.01);
+    }
 }
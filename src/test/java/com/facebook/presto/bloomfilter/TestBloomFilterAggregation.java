@@ -13,12 +13,17 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
 import com.facebook.presto.spi.block.BlockBuilder;
 import com.facebook.presto.spi.block.BlockBuilderStatus;
 import com.facebook.presto.spi.block.VariableWidthBlockBuilder;
+import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public class TestBloomFilterAggregation
@@ -99,4 +104,173 @@ public class TestBloomFilterAggregation
 
         assertTrue(bb.build().getSizeInBytes() > 1);
     }
+
+    @Test
+    public void testBloomFilterMerge()
+    {
+        // Daily filters, every one holds its own keys
+        BloomFilter expected = BloomFilter.newInstance(100000, 0.01);
+        BloomFilterStateFactory f = new BloomFilterStateFactory();
+        BloomFilterState state = f.createSingleState();
+        for (int day = 0; day < 30; day++) {
+            BloomFilter daily = BloomFilter.newInstance(100000, 0.01);
+            for (int i = 0; i < 1000; i++) {
+                daily.put(Slices.utf8Slice(day + ":" + i));
+                expected.put(Slices.utf8Slice(day + ":" + i));
+            }
+            BloomFilterMergeAggregation.input(state, daily.serialize());
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(state.getBloomFilter().mightContain(Slices.utf8Slice("29:" + i)));
+        }
+
+        // Same content hash and bits as a filter built from all keys at once
+        assertEquals(state.getBloomFilter().serialize(), expected.serialize());
+    }
+
+    @Test
+    public void testBloomFilterGroupedSlab()
+    {
+        BloomFilterStateFactory f = new BloomFilterStateFactory();
+        BloomFilterStateFactory.GroupedBloomFilterState grouped = (BloomFilterStateFactory.GroupedBloomFilterState) f.createGroupedState();
+        grouped.ensureCapacity(100);
+        BloomFilter[] expected = new BloomFilter[100];
+        for (int group = 0; group < 100; group++) {
+            expected[group] = BloomFilter.newInstance(1000, 0.01);
+        }
+        for (int i = 0; i < 10000; i++) {
+            int group = i % 100;
+            grouped.setGroupId(group);
+            BloomFilterAggregation.input(grouped, Slices.utf8Slice("key" + i), 1000);
+            expected[group].put(Slices.utf8Slice("key" + i));
+        }
+
+        // Another group with other parameters gets a filter of its own
+        grouped.ensureCapacity(101);
+        grouped.setGroupId(100);
+        BloomFilterAggregation.input(grouped, Slices.utf8Slice("robin"), 2000);
+        assertEquals(grouped.getBloomFilter().getExpectedInsertions(), 2000);
+
+        for (int group = 0; group < 100; group++) {
+            grouped.setGroupId(group);
+            assertEquals(grouped.getBloomFilter().serialize(), expected[group].serialize());
+        }
+
+        // Merging into a group moves its filter out of the slab, which accounts for it from then on
+        BloomFilterState other = f.createSingleState();
+        BloomFilterAggregation.input(other, Slices.utf8Slice("robin"), 1000);
+        grouped.setGroupId(0);
+        long size = grouped.getEstimatedSize();
+        BloomFilterAggregation.combine(grouped, other);
+        assertTrue(grouped.getBloomFilter().mightContain(Slices.utf8Slice("robin")));
+        assertTrue(grouped.getBloomFilter().mightContain(Slices.utf8Slice("key0")));
+        assertTrue(grouped.getEstimatedSize() >= size + grouped.getBloomFilter().estimatedInMemorySize());
+
+        // Also when a serialized partial result is OR-ed in
+        BloomFilterState serialized = f.createSingleState();
+        serialized.setSerializedBloomFilter(other.getBloomFilter().serialize());
+        grouped.setGroupId(1);
+        size = grouped.getEstimatedSize();
+        BloomFilterAggregation.combine(grouped, serialized);
+        assertTrue(grouped.getBloomFilter().mightContain(Slices.utf8Slice("robin")));
+        assertTrue(grouped.getBloomFilter().mightContain(Slices.utf8Slice("key1")));
+        assertTrue(grouped.getEstimatedSize() >= size + grouped.getBloomFilter().estimatedInMemorySize());
+    }
+
+    @Test
+    public void testBloomFilterSlabSlots()
+    {
+        BloomFilterSlab slab = new BloomFilterSlab(1000, 0.01);
+        slab.put(0, Slices.utf8Slice("robin"));
+        long oneFilter = slab.sizeOf();
+
+        // Only groups in the slab take words, not every group below them
+        slab.put(100000, Slices.utf8Slice("key"));
+        assertTrue(slab.sizeOf() < 3 * oneFilter + 100000 * 8);
+        assertTrue(slab.materialize(100000).mightContain(Slices.utf8Slice("key")));
+
+        // The slot of a removed group is cleared and reused
+        slab.remove(0);
+        long size = slab.sizeOf();
+        slab.put(1, Slices.utf8Slice("other"));
+        assertEquals(slab.sizeOf(), size);
+        assertFalse(slab.contains(0));
+        assertFalse(slab.materialize(1).mightContain(Slices.utf8Slice("robin")));
+        assertTrue(slab.materialize(1).mightContain(Slices.utf8Slice("other")));
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = "Expected insertions must be at least 1, got -5")
+    public void testBloomFilterNegativeExpectedInsertions()
+    {
+        BloomFilterAggregation.input(new BloomFilterStateFactory().createSingleState(), Slices.utf8Slice("robin"), -5);
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = "Expected insertions must be at least 1, got 0")
+    public void testBloomFilterPartitionedZeroExpectedInsertions()
+    {
+        BloomFilterPartitionedAggregation.input(new BloomFilterStateFactory().createSingleState(), Slices.utf8Slice("robin"), 4, 0);
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = "Expected insertions must be at least 1, got -1")
+    public void testBloomFilterSharedNegativeExpectedInsertions()
+    {
+        SharedBloomFilterAggregation.input(new SharedBloomFilterStateFactory().createSingleState(), Slices.utf8Slice("robin"), Slices.utf8Slice("name"), -1);
+    }
+
+    @Test
+    public void testBloomFilterWiderThanInt()
+    {
+        // One bitset of more than 2^31 bits, a high false positive percentage keeps it at about 300MB
+        BloomFilterState state = new BloomFilterStateFactory().createSingleState();
+        for (int i = 0; i < 1000; i++) {
+            BloomFilterAggregation.input(state, Slices.utf8Slice("key" + i), 1_600_000_000L, 0.5);
+        }
+        assertTrue(state.getBloomFilter().getBitSet().isWide());
+        BlockBuilder out = new VariableWidthBlockBuilder(new BlockBuilderStatus(), 1, 1024);
+        BloomFilterAggregation.output(state, out);
+        state.setBloomFilter(null);
+
+        // Probed the way a query reads the aggregation result
+        Slice serialized = BloomFilterType.BLOOM_FILTER.getSlice(out.build(), 0);
+        try {
+            int falsePositives = 0;
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(BloomFilterContainsScalarFunction.varcharBloomFilterContains(serialized, Slices.utf8Slice("key" + i)));
+                if (BloomFilterContainsScalarFunction.varcharBloomFilterContains(serialized, Slices.utf8Slice("other" + i))) {
+                    falsePositives++;
+                }
+            }
+            assertTrue(falsePositives < 600);
+        }
+        finally {
+            BloomFilterScalarFunctions.BF_CACHE.invalidateAll();
+        }
+    }
+
+    @Test
+    public void testBloomFilterCombineSerialized()
+    {
+        // Partial results as they are written out and read back, e.g. when spilling
+        BloomFilterStateFactory f = new BloomFilterStateFactory();
+        BloomFilterStateSerializer serializer = new BloomFilterStateSerializer();
+        BlockBuilder partials = new VariableWidthBlockBuilder(new BlockBuilderStatus(), 3, 1024);
+        for (int partial = 0; partial < 3; partial++) {
+            BloomFilterState state = f.createSingleState();
+            BloomFilterAggregation.input(state, Slices.utf8Slice("key" + partial), 1000);
+            serializer.serialize(state, partials);
+        }
+
+        BloomFilterState state = f.createSingleState();
+        BloomFilterState scratch = f.createSingleState();
+        for (int partial = 0; partial < 3; partial++) {
+            serializer.deserialize(partials.build(), partial, scratch);
+            BloomFilterAggregation.combine(state, scratch);
+        }
+
+        // Only the first partial result was deserialized, the others were OR-ed in as is
+        assertNotNull(scratch.getSerializedBloomFilter());
+        for (int partial = 0; partial < 3; partial++) {
+            assertTrue(state.getBloomFilter().mightContain(Slices.utf8Slice("key" + partial)));
+        }
+    }
 }
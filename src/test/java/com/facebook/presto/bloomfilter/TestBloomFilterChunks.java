@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBloomFilterChunks
+{
+    private static final int CHUNK_SIZE = 16;
+
+    private byte[] value;
+    private int replacedManifests;
+    private Server server;
+    private String url;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000);
+        for (int i = 0; i < 100; i++) {
+            bf.put(utf8Slice("key" + i));
+        }
+        value = bf.toBase64();
+
+        // Serves the value in chunks, like the persist service does for large values
+        server = new Server(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request request, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+                    throws IOException
+            {
+                int count = (value.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                byte[] body;
+                // The first manifest of a replaced filter points to chunks that are gone
+                boolean replaced = target.startsWith("/replaced");
+                String generation = "new";
+                if (target.contains("/chunk/")) {
+                    if (!generation.equals(request.getParameter("generation"))) {
+                        httpServletResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                        request.setHandled(true);
+                        return;
+                    }
+                    int index = Integer.parseInt(target.substring(target.lastIndexOf('/') + 1));
+                    body = Arrays.copyOfRange(value, index * CHUNK_SIZE, Math.min(value.length, (index + 1) * CHUNK_SIZE));
+                    if (target.startsWith("/truncated")) {
+                        body = Arrays.copyOf(body, body.length - 1);
+                    }
+                }
+                else if (request.getHeader(BloomFilterChunks.CHUNKS_HEADER) != null) {
+                    if (replaced && replacedManifests++ == 0) {
+                        generation = "old";
+                    }
+                    body = ("chunks:" + count + ":" + value.length + ":" + CHUNK_SIZE + ":" + generation).getBytes(UTF_8);
+                    httpServletResponse.setHeader(BloomFilterChunks.CHUNKS_HEADER, "manifest");
+                }
+                else {
+                    body = value;
+                }
+                httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                httpServletResponse.getOutputStream().write(body);
+                request.setHandled(true);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testFetch()
+            throws Exception
+    {
+        assertTrue(value.length > CHUNK_SIZE * BloomFilterChunks.PARALLEL_CHUNKS);
+        assertEquals(BloomFilter.fetch(url + "/bloomfilter/key1"), value);
+
+        BloomFilter bf = BloomFilter.fromUrl(url + "/bloomfilter/key1");
+        assertTrue(bf.mightContain(utf8Slice("key1")));
+        assertFalse(bf.mightContain(utf8Slice("other")));
+    }
+
+    @Test
+    public void testTruncatedChunk()
+            throws Exception
+    {
+        try {
+            BloomFilter.fetch(url + "/truncated/key1");
+            fail("expected failure");
+        }
+        catch (IOException ex) {
+            assertTrue(ex.getCause().getMessage().contains("is smaller than"));
+        }
+    }
+
+    @Test
+    public void testReplacedChunks()
+            throws Exception
+    {
+        // The chunks of the first manifest are gone, the second manifest is fetched
+        assertEquals(BloomFilter.fetch(url + "/replaced/key1"), value);
+        assertEquals(replacedManifests, 2);
+    }
+}
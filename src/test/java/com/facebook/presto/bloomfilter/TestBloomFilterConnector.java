@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ConnectorSplit;
+import com.facebook.presto.spi.ConnectorTableLayoutResult;
+import com.facebook.presto.spi.Constraint;
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.SchemaTableName;
+import com.facebook.presto.spi.connector.Connector;
+import com.facebook.presto.spi.connector.ConnectorMetadata;
+import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.facebook.presto.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static com.facebook.presto.spi.transaction.IsolationLevel.READ_COMMITTED;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBloomFilterConnector
+{
+    @Test
+    public void testReadFilterFromDirectory()
+            throws Exception
+    {
+        File directory = Files.createTempDirectory("bloomfilter").toFile();
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Files.write(new File(directory, "Customers.bf").toPath(), bf.toBase64());
+
+        Connector connector = new BloomFilterConnectorFactory().create("bloomfilter", ImmutableMap.of(BloomFilterTableSource.DIRECTORY_PROPERTY, directory.getPath()), null);
+        ConnectorTransactionHandle transaction = connector.beginTransaction(READ_COMMITTED, true);
+        ConnectorMetadata metadata = connector.getMetadata(transaction);
+
+        SchemaTableName tableName = new SchemaTableName(BloomFilterMetadata.SCHEMA_NAME, "customers");
+        assertEquals(metadata.listTables(null, null), ImmutableList.of(tableName));
+        assertNull(metadata.getTableHandle(null, new SchemaTableName(BloomFilterMetadata.SCHEMA_NAME, "orders")));
+
+        BloomFilterTableHandle table = (BloomFilterTableHandle) metadata.getTableHandle(null, tableName);
+        Map<String, ColumnHandle> columns = metadata.getColumnHandles(null, table);
+        List<ConnectorTableLayoutResult> layouts = metadata.getTableLayouts(null, table, Constraint.alwaysTrue(), Optional.empty());
+        List<ConnectorSplit> splits = connector.getSplitManager().getSplits(transaction, null, layouts.get(0).getTableLayout().getHandle()).getNextBatch(10).get();
+        assertEquals(splits.size(), 1);
+
+        RecordCursor cursor = connector.getRecordSetProvider()
+                .getRecordSet(transaction, null, splits.get(0), ImmutableList.of(columns.get("name"), columns.get("bloom_filter")))
+                .cursor();
+        assertTrue(cursor.advanceNextPosition());
+        assertEquals(cursor.getSlice(0).toStringUtf8(), "customers");
+
+        // Only a reference travels, it is resolved against the resident copy
+        Slice reference = cursor.getSlice(1);
+        assertTrue(reference.length() < 200);
+        assertEquals(BloomFilter.readHash(reference), BloomFilter.readHash(bf.serialize()));
+        BloomFilter resolved = BloomFilter.newInstance(reference);
+        assertTrue(resolved.mightContain(Slices.utf8Slice("robin")));
+        assertFalse(resolved.mightContain(Slices.utf8Slice("verlangen")));
+        assertFalse(cursor.advanceNextPosition());
+    }
+
+    @Test
+    public void testListTablesSkipsDuplicates()
+            throws Exception
+    {
+        File directory = Files.createTempDirectory("bloomfilter").toFile();
+        byte[] bf = BloomFilter.newInstance(1000, 0.01).toBase64();
+        Files.write(new File(directory, "customers.txt").toPath(), bf);
+        Files.write(new File(directory, "Customers.bf").toPath(), bf);
+
+        // The first name in sort order wins
+        BloomFilterTableSource tableSource = new BloomFilterTableSource(ImmutableMap.of(BloomFilterTableSource.DIRECTORY_PROPERTY, directory.getPath()));
+        assertEquals(tableSource.listTables(), ImmutableMap.of("customers", new File(directory, "Customers.bf").toURI().toString()));
+    }
+
+    @Test
+    public void testListTablesIsCached()
+            throws Exception
+    {
+        File directory = Files.createTempDirectory("bloomfilter").toFile();
+        byte[] bf = BloomFilter.newInstance(1000, 0.01).toBase64();
+        Files.write(new File(directory, "customers.bf").toPath(), bf);
+
+        BloomFilterTableSource cached = new BloomFilterTableSource(ImmutableMap.of(BloomFilterTableSource.DIRECTORY_PROPERTY, directory.getPath()));
+        BloomFilterTableSource uncached = new BloomFilterTableSource(ImmutableMap.of(BloomFilterTableSource.DIRECTORY_PROPERTY, directory.getPath(), BloomFilterTableSource.LIST_TTL_PROPERTY, "0s"));
+        assertEquals(cached.listTables().keySet(), ImmutableSet.of("customers"));
+        assertEquals(uncached.listTables().keySet(), ImmutableSet.of("customers"));
+
+        // New filters show up once the listing expired
+        Files.write(new File(directory, "orders.bf").toPath(), bf);
+        assertEquals(cached.listTables().keySet(), ImmutableSet.of("customers"));
+        assertEquals(uncached.listTables().keySet(), ImmutableSet.of("customers", "orders"));
+    }
+
+    @Test
+    public void testReferenceVerifiesHash()
+            throws Exception
+    {
+        File file = File.createTempFile("bloomfilter", ".bf");
+        String location = file.toURI().toString();
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        BloomFilter other = BloomFilter.newInstance(1000, 0.01);
+        other.put(Slices.utf8Slice("verlangen"));
+        Files.write(file.toPath(), bf.toBase64());
+        Slice reference = BloomFilter.newReference(location);
+
+        // A stale resident copy is loaded again
+        BloomFilterRegistry.register(location, other.serialize());
+        assertTrue(BloomFilter.newInstance(reference).mightContain(Slices.utf8Slice("robin")));
+
+        // The filter changed since the reference was created
+        Files.write(file.toPath(), other.toBase64());
+        BloomFilterRegistry.register(location, other.serialize());
+        try {
+            BloomFilter.newInstance(reference);
+            fail("expected a changed filter to be rejected");
+        }
+        catch (PrestoException ex) {
+            assertEquals(ex.getErrorCode(), GENERIC_INTERNAL_ERROR.toErrorCode());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.Slice;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilterDelta
+{
+    private final List<String> queries = new ArrayList<>();
+    private Server server;
+    private String url;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request request, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+            {
+                queries.add(String.valueOf(request.getQueryString()));
+                httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                request.setHandled(true);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/bloomfilter/key1";
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testDiff()
+    {
+        BloomFilter base = BloomFilter.newInstance(10000);
+        BloomFilter next = BloomFilter.newInstance(10000);
+        for (int i = 0; i < 1000; i++) {
+            base.put(utf8Slice("key" + i));
+            next.put(utf8Slice("key" + i));
+        }
+        next.put(utf8Slice("other"));
+
+        Slice delta = BloomFilterDelta.diff(base, next, Integer.MAX_VALUE);
+        assertNotNull(delta);
+
+        // Applying the delta to the base yields the next version
+        BasicSliceInput input = delta.getInput();
+        for (BloomFilterBitSet bitSet : new BloomFilterBitSet[] {base.getPreBitSet(), base.getBitSet()}) {
+            long[] words = bitSet.getWords();
+            for (int count = input.readInt(); count > 0; count--) {
+                words[input.readInt()] ^= input.readLong();
+            }
+        }
+        assertTrue(base.mightContain(utf8Slice("other")));
+        assertEquals(base.getBitSet().getWords(), next.getBitSet().getWords());
+        assertEquals(base.getPreBitSet().getWords(), next.getPreBitSet().getWords());
+
+        // Too large or incompatible
+        assertNull(BloomFilterDelta.diff(base, next, 8));
+        assertNull(BloomFilterDelta.diff(base, BloomFilter.newInstance(100), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testPersistDelta()
+            throws Exception
+    {
+        BloomFilter bf = BloomFilter.newInstance(100000);
+        for (int i = 0; i < 1000; i++) {
+            bf.put(utf8Slice("key" + i));
+        }
+        queries.clear();
+        BloomFilterPersistScalarFunction.bloomFilterPersist(bf.serialize(), utf8Slice(url));
+        bf.put(utf8Slice("other"));
+        BloomFilterPersistScalarFunction.bloomFilterPersist(bf.serialize(), utf8Slice(url));
+
+        assertEquals(queries.size(), 2);
+        assertEquals(queries.get(0), "null");
+        assertTrue(queries.get(1).startsWith("mode=delta&base="));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilterIndex
+{
+    private static final int FILTERS = 150;
+
+    @Test
+    public void testIndexMatchesFilters()
+    {
+        BloomFilter[] filters = createFilters();
+        BloomFilterIndex index = BloomFilterIndex.newInstance(filters[0].getBitSet());
+        for (int i = 0; i < FILTERS; i++) {
+            index.add(i * 10, filters[i].getBitSet());
+        }
+        assertMatches(BloomFilterIndex.newInstance(index.serialize()), filters);
+    }
+
+    @Test
+    public void testIndexMerge()
+    {
+        BloomFilter[] filters = createFilters();
+
+        // Unaligned, the second half is copied column by column
+        BloomFilterIndex unaligned = BloomFilterIndex.newInstance(filters[0].getBitSet());
+        BloomFilterIndex other = BloomFilterIndex.newInstance(filters[0].getBitSet());
+        for (int i = 0; i < FILTERS; i++) {
+            (i < 70 ? unaligned : other).add(i * 10, filters[i].getBitSet());
+        }
+        unaligned.putAll(other);
+        assertMatches(unaligned, filters);
+
+        // Aligned, the groups of the second half are taken over
+        BloomFilterIndex aligned = BloomFilterIndex.newInstance(filters[0].getBitSet());
+        other = BloomFilterIndex.newInstance(filters[0].getBitSet());
+        for (int i = 0; i < FILTERS; i++) {
+            (i < 64 ? aligned : other).add(i * 10, filters[i].getBitSet());
+        }
+        aligned.putAll(other);
+        assertMatches(aligned, filters);
+    }
+
+    @Test(expectedExceptions = PrestoException.class)
+    public void testIndexTooLarge()
+    {
+        // A single group of these would not fit a byte array
+        BloomFilterIndex.newInstance(7, 1 << 29);
+    }
+
+    private static BloomFilter[] createFilters()
+    {
+        BloomFilter[] filters = new BloomFilter[FILTERS];
+        for (int i = 0; i < FILTERS; i++) {
+            filters[i] = BloomFilter.newInstance(100, 0.01);
+            for (int j = 0; j < 20; j++) {
+                filters[i].put(Slices.utf8Slice("key-" + i + "-" + j));
+            }
+        }
+        return filters;
+    }
+
+    private static void assertMatches(BloomFilterIndex index, BloomFilter[] filters)
+    {
+        assertEquals(index.getCount(), FILTERS);
+        for (int i = 0; i < FILTERS; i++) {
+            Slice key = Slices.utf8Slice("key-" + i + "-3");
+            long[] ids = index.match(new BloomFilterProbe(key));
+            assertTrue(Arrays.binarySearch(ids, i * 10) >= 0);
+
+            // Exactly the filters that might contain the key
+            long[] expected = new long[0];
+            for (int j = 0; j < FILTERS; j++) {
+                if (filters[j].getBitSet().mightContain(new BloomFilterProbe(key).getPositions(filters[j].getBitSet()))) {
+                    expected = Arrays.copyOf(expected, expected.length + 1);
+                    expected[expected.length - 1] = j * 10;
+                }
+            }
+            assertEquals(ids, expected);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static com.google.common.io.ByteStreams.toByteArray;
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilterPersistBatch
+{
+    private final List<byte[]> bodies = new ArrayList<>();
+    private Server server;
+    private String url;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String s, Request request, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+                    throws IOException
+            {
+                synchronized (bodies) {
+                    bodies.add(toByteArray(request.getInputStream()));
+                }
+                httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                request.setHandled(true);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/bloomfilter";
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testFlush()
+    {
+        BloomFilter bf = BloomFilter.newInstance(10);
+        bf.put(utf8Slice("a"));
+        Slice serialized = bf.serialize();
+
+        BloomFilterPersistBatch batch = new BloomFilterPersistBatch(url);
+        batch.add(utf8Slice("key1"), serialized);
+        BloomFilterPersistBatch other = new BloomFilterPersistBatch(url);
+        other.add(utf8Slice("key2"), serialized);
+
+        // Partial batches survive a state round trip
+        batch.addAll(BloomFilterPersistBatch.newInstance(other.serialize()));
+        assertEquals(batch.getCount(), 2);
+
+        bodies.clear();
+        batch.flush();
+        batch.flush();
+        assertEquals(bodies.size(), 1);
+        assertEquals(batch.getCount(), 2);
+
+        BasicSliceInput input = Slices.wrappedBuffer(bodies.get(0)).getInput();
+        for (String key : new String[] {"key1", "key2"}) {
+            assertEquals(input.readSlice(input.readInt()).toStringUtf8(), key);
+            Slice value = input.readSlice(input.readInt());
+            BloomFilter persisted = BloomFilter.newInstance(Slices.wrappedBuffer(Base64.getDecoder().decode(value.getBytes())));
+            assertTrue(persisted.mightContain(utf8Slice("a")));
+        }
+        assertEquals(input.isReadable(), false);
+    }
+
+    @Test
+    public void testFlushWhenFull()
+    {
+        Slice serialized = BloomFilter.newInstance(10).serialize();
+        BloomFilterPersistBatch batch = new BloomFilterPersistBatch(url);
+        bodies.clear();
+        for (int i = 0; i <= BloomFilterPersistBatch.MAX_BATCH_FILTERS; i++) {
+            batch.add(utf8Slice("key" + i), serialized);
+        }
+        assertEquals(bodies.size(), 1);
+        batch.flush();
+        assertEquals(bodies.size(), 2);
+        assertEquals(batch.getCount(), BloomFilterPersistBatch.MAX_BATCH_FILTERS + 1);
+    }
+
+    @Test(expectedExceptions = PrestoException.class)
+    public void testVaryingUrl()
+    {
+        BloomFilterPersistBatch batch = new BloomFilterPersistBatch(url);
+        batch.addAll(new BloomFilterPersistBatch(url + "2"));
+    }
+}
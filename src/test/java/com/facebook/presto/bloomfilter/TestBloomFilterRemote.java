@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.Slices;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.io.ByteStreams.toByteArray;
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilterRemote
+{
+    private final AtomicInteger probeRequests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private BloomFilter bf;
+    private Server server;
+    private String url;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        bf = BloomFilter.newInstance(1000);
+        bf.put(utf8Slice("a"));
+        byte[] value = bf.toBase64();
+
+        // Answers membership requests like the persist service, except for the "unsupported" key
+        server = new Server(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request request, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+                    throws IOException
+            {
+                request.setHandled(true);
+                if (!target.endsWith("/contains")) {
+                    downloads.incrementAndGet();
+                    httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                    httpServletResponse.getOutputStream().write(value);
+                    return;
+                }
+                probeRequests.incrementAndGet();
+                if (target.contains("unsupported")) {
+                    httpServletResponse.setStatus(415);
+                    return;
+                }
+                if (target.contains("truncated")) {
+                    httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                    return;
+                }
+                BasicSliceInput input = Slices.wrappedBuffer(toByteArray(request.getInputStream())).getInput();
+                byte[] matches = new byte[0];
+                while (input.isReadable()) {
+                    matches = Arrays.copyOf(matches, matches.length + 1);
+                    matches[matches.length - 1] = (byte) (bf.mightContain(input.readSlice(input.readInt())) ? 1 : 0);
+                }
+                httpServletResponse.setStatus(HttpServletResponse.SC_OK);
+                httpServletResponse.setHeader("X-Bloomfilter-Size", String.valueOf(target.contains("large") ? 1L << 31 : value.length));
+                httpServletResponse.getOutputStream().write(matches);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/bloomfilter/";
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testSwitchToDownload()
+    {
+        probeRequests.set(0);
+        downloads.set(0);
+        BloomFilterRemote remote = BloomFilterRemote.get(url + "small");
+
+        // The size is unknown until the first response
+        boolean[] matches = remote.mightContain(Arrays.asList(utf8Slice("a"), utf8Slice("b")));
+        assertTrue(matches[0]);
+        assertFalse(matches[1]);
+        assertEquals(probeRequests.get(), 1);
+        assertEquals(downloads.get(), 0);
+
+        // Probing a small filter remotely costs more than downloading it
+        assertTrue(remote.mightContain(utf8Slice("a")));
+        assertFalse(remote.mightContain(utf8Slice("b")));
+        assertEquals(probeRequests.get(), 1);
+        assertEquals(downloads.get(), 1);
+    }
+
+    @Test
+    public void testUnsupportedLayout()
+    {
+        probeRequests.set(0);
+        downloads.set(0);
+        BloomFilterRemote remote = BloomFilterRemote.get(url + "unsupported");
+        assertTrue(remote.mightContain(utf8Slice("a")));
+        assertFalse(remote.mightContain(utf8Slice("b")));
+        assertEquals(probeRequests.get(), 1);
+        assertEquals(downloads.get(), 1);
+    }
+
+    @Test
+    public void testRequestLimit()
+    {
+        probeRequests.set(0);
+        downloads.set(0);
+        BloomFilterRemote remote = BloomFilterRemote.get(url + "large");
+
+        // Row at a time probes of a 2GB filter download it after a bounded number of round trips
+        for (int i = 0; i < 100; i++) {
+            assertTrue(remote.mightContain(utf8Slice("a")));
+        }
+        assertEquals(probeRequests.get(), 32);
+        assertEquals(downloads.get(), 1);
+
+        // A re-persisted filter is downloaded again once the local copy is dropped
+        BloomFilterRemote.invalidateLocal(url + "large");
+        assertTrue(remote.mightContain(utf8Slice("a")));
+        assertEquals(probeRequests.get(), 32);
+        assertEquals(downloads.get(), 2);
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = ".*returned 0 results for 2 keys")
+    public void testTruncatedResponse()
+    {
+        BloomFilterRemote.get(url + "truncated").mightContain(Arrays.asList(utf8Slice("a"), utf8Slice("b")));
+    }
+}
@@ -13,15 +13,20 @@
  */
 package com.facebook.presto.bloomfilter;
 
+import com.facebook.presto.spi.PrestoException;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
 import org.testng.annotations.Test;
 
+import java.util.Base64;
 import java.util.Date;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
 
 public class TestBloomFilterSerialization
 {
@@ -77,4 +82,89 @@ public class TestBloomFilterSerialization
         long took = new Date().getTime() - start;
         assertTrue(took < 10000L);
     }
+
+    @Test
+    public void testBloomFilterCastVarbinary()
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice ser = bf.serialize();
+
+        // The serialized filter is written as is and read back under the sha256 of its payload, which is kept
+        assertSame(BloomFilterOperators.castToBinary(ser), ser);
+        Slice verified = BloomFilterOperators.castFromBinary(ser);
+        assertEquals(verified.slice(32, verified.length() - 32), ser.slice(32, ser.length() - 32));
+        assertFalse(verified.slice(0, 32).equals(ser.slice(0, 32)));
+        assertSame(BloomFilterOperators.castFromBinary(verified), verified);
+        assertTrue(BloomFilter.newInstance(verified).mightContain(Slices.utf8Slice("robin")));
+
+        // Layouts hashed with sha256 pass as is
+        Slice partitioned = BloomFilter.newPartitionedInstance(1000, 0.01, 4).serialize();
+        assertSame(BloomFilterOperators.castFromBinary(partitioned), partitioned);
+
+        // References only resolve on this worker, so the referenced filter is stored instead
+        BloomFilterRegistry.register("testBloomFilterCastVarbinary", ser);
+        Slice binary = BloomFilterOperators.castToBinary(BloomFilter.newReference("testBloomFilterCastVarbinary"));
+        assertEquals(binary, ser);
+        assertTrue(BloomFilter.newInstance(BloomFilterOperators.castFromBinary(binary)).mightContain(Slices.utf8Slice("robin")));
+    }
+
+    @Test(expectedExceptions = PrestoException.class)
+    public void testBloomFilterCastInvalidVarbinary()
+    {
+        BloomFilterOperators.castFromBinary(Slices.utf8Slice("robin"));
+    }
+
+    @Test
+    public void testBloomFilterFromStringVerified()
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice ser = bf.serialize();
+
+        // Strings are keyed by the sha256 of their payload, like a cast
+        BloomFilterState state = new BloomFilterStateFactory().createSingleState();
+        BloomFilterFromString.input(state, Slices.wrappedBuffer(bf.toBase64()));
+        assertEquals(state.getBloomFilter().serialize(), BloomFilterOperators.castFromBinary(ser));
+
+        // A string carrying the hash of another filter is rejected
+        Slice forged = Slices.copyOf(BloomFilter.newInstance(1000, 0.01).serialize());
+        forged.setBytes(0, ser, 0, 32);
+        try {
+            BloomFilterFromString.input(new BloomFilterStateFactory().createSingleState(), Slices.wrappedBuffer(Base64.getEncoder().encode(forged.getBytes())));
+            fail("Forged hash was accepted");
+        }
+        catch (PrestoException ex) {
+            assertTrue(ex.getMessage().contains("Hash does not match"), ex.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = ".*Corrupt bitset.*")
+    public void testBloomFilterCastTruncatedVarbinary()
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice ser = bf.serialize();
+        BloomFilterOperators.castFromBinary(ser.slice(0, ser.length() - 8));
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = ".*layout -42.*")
+    public void testBloomFilterCastUnknownLayout()
+    {
+        Slice ser = Slices.copyOf(BloomFilter.newInstance(1000, 0.01).serialize());
+        ser.setInt(32, -42);
+        BloomFilterOperators.castFromBinary(ser);
+    }
+
+    @Test(expectedExceptions = PrestoException.class, expectedExceptionsMessageRegExp = ".*Hash does not match.*")
+    public void testBloomFilterCastForgedHash()
+    {
+        // Another filter under the hash of this one would take its place in the filter cache
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice ser = bf.serialize();
+        Slice forged = Slices.copyOf(BloomFilter.newInstance(1000, 0.01).serialize());
+        forged.setBytes(0, ser, 0, 32);
+        BloomFilterOperators.castFromBinary(forged);
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import static com.facebook.presto.bloomfilter.BloomFilterStats.STATS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilterStats
+{
+    @Test
+    public void testCacheAndPreFilterStats()
+    {
+        BloomFilter bf = BloomFilter.newInstance(1000, 0.01);
+        bf.put(Slices.utf8Slice("robin"));
+        Slice serialized = bf.serialize();
+
+        long misses = STATS.getCacheMisses();
+        long hits = STATS.getCacheHits();
+        long bytes = STATS.getDeserializedBytes().getTotalCount();
+        BloomFilter cached = BloomFilterScalarFunctions.getOrLoadBloomFilter(serialized);
+        assertEquals(BloomFilterScalarFunctions.getOrLoadBloomFilter(serialized), cached);
+        assertEquals(STATS.getCacheMisses(), misses + 1);
+        assertEquals(STATS.getCacheHits(), hits + 1);
+        assertEquals(STATS.getDeserializedBytes().getTotalCount(), bytes + serialized.length());
+
+        long probes = STATS.getPreFilterProbes();
+        long rejects = STATS.getPreFilterRejects();
+        cached.mightContain(Slices.utf8Slice("robin"));
+        for (int i = 0; i < 100; i++) {
+            cached.mightContain(Slices.utf8Slice("not-in-here-" + i));
+        }
+        assertEquals(STATS.getPreFilterProbes(), probes + 101);
+        assertTrue(STATS.getPreFilterRejects() > rejects);
+    }
+
+    @Test
+    public void testExport()
+            throws Exception
+    {
+        BloomFilterStats.export();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.facebook.presto.bloomfilter:name=BloomFilterStats");
+        assertTrue(server.isRegistered(name));
+        assertTrue(server.getAttribute(name, "CacheHits") instanceof Long);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestBloomFilterUploader
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int failFirst;
+    private volatile int failStatus = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    private Server server;
+    private String url;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String s, Request request, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+            {
+                int attempt = requests.incrementAndGet();
+                httpServletResponse.setStatus(attempt <= failFirst ? failStatus : HttpServletResponse.SC_OK);
+                request.setHandled(true);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/bloomfilter/key1";
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testRetry()
+    {
+        BloomFilterUploader uploader = new BloomFilterUploader(BloomFilterScalarFunctions.HTTP_CLIENT, 2, 3, 1);
+        requests.set(0);
+        failFirst = 2;
+        uploader.uploadAndWait(url, BloomFilter.newInstance(10).toBase64());
+        assertEquals(requests.get(), 3);
+        assertEquals(uploader.getAvailablePermits(), 2);
+    }
+
+    @Test
+    public void testGiveUp()
+    {
+        BloomFilterUploader uploader = new BloomFilterUploader(BloomFilterScalarFunctions.HTTP_CLIENT, 2, 3, 1);
+        requests.set(0);
+        failFirst = Integer.MAX_VALUE;
+        try {
+            uploader.uploadAndWait(url, BloomFilter.newInstance(10).toBase64());
+            fail("expected failure");
+        }
+        catch (PrestoException ex) {
+            assertEquals(requests.get(), 3);
+        }
+        assertEquals(uploader.getAvailablePermits(), 2);
+    }
+
+    @Test
+    public void testClientErrorNotRetried()
+    {
+        BloomFilterUploader uploader = new BloomFilterUploader(BloomFilterScalarFunctions.HTTP_CLIENT, 2, 3, 1);
+        requests.set(0);
+        failFirst = Integer.MAX_VALUE;
+        failStatus = HttpServletResponse.SC_CONFLICT;
+        try {
+            uploader.uploadAndWait(url, BloomFilter.newInstance(10).toBase64());
+            fail("expected failure");
+        }
+        catch (PrestoException ex) {
+            assertEquals(requests.get(), 1);
+        }
+        finally {
+            failStatus = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        }
+        assertEquals(uploader.getAvailablePermits(), 2);
+    }
+
+    @Test
+    public void testInvalidUrlReturnsPermit()
+    {
+        // Requests that can not be built never reach the completion callback, without their permits the
+        // 17th upload would block forever
+        BloomFilterUploader uploader = new BloomFilterUploader(BloomFilterScalarFunctions.HTTP_CLIENT, 16, 3, 1);
+        for (int i = 0; i < 17; i++) {
+            try {
+                uploader.uploadAndWait("not a url", BloomFilter.newInstance(10).toBase64());
+                fail("Expected the upload to fail");
+            }
+            catch (PrestoException ignored) {
+            }
+        }
+        assertEquals(uploader.getAvailablePermits(), 16);
+    }
+}
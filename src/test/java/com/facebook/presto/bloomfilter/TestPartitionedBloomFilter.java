@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestPartitionedBloomFilter
+{
+    @Test
+    public void testPartitionedElementExists()
+    {
+        BloomFilter bf = BloomFilter.newPartitionedInstance(1000, 0.01, 16);
+        bf.put(Slices.utf8Slice("robin"));
+        assertTrue(bf.isPartitioned());
+        assertTrue(bf.mightContain(Slices.utf8Slice("robin")));
+        assertFalse(bf.mightContain(Slices.utf8Slice("verlangen")));
+    }
+
+    @Test
+    public void testPartitionedAllocatesOnFirstUse()
+    {
+        BloomFilter bf = BloomFilter.newPartitionedInstance(1_000_000, 0.01, 16);
+        int empty = bf.estimatedInMemorySize();
+        bf.put(Slices.utf8Slice("robin"));
+        int single = bf.estimatedInMemorySize();
+        assertTrue(single > empty);
+        assertTrue(single < BloomFilter.newInstance(1_000_000, 0.01).estimatedInMemorySize() / 8);
+    }
+
+    @Test
+    public void testPartitionedAssemble()
+    {
+        int partitions = 8;
+        BloomFilter[] perPartition = new BloomFilter[partitions];
+        for (int i = 0; i < partitions; i++) {
+            perPartition[i] = BloomFilter.newPartitionedInstance(10000, 0.01, partitions);
+        }
+
+        // Route every key to the filter of its own partition, like GROUP BY bloom_filter_partition(key) does
+        for (int i = 0; i < 1000; i++) {
+            Slice key = Slices.utf8Slice("key-" + i);
+            perPartition[PartitionedBloomFilter.partition(XxHash64.hash(key), partitions)].put(key);
+        }
+
+        // Assemble from serialized partitions
+        BloomFilter assembled = BloomFilter.newInstance(perPartition[0].serialize());
+        for (int i = 1; i < partitions; i++) {
+            assembled.putAll(BloomFilter.newInstance(perPartition[i].serialize()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(assembled.mightContain(Slices.utf8Slice("key-" + i)));
+        }
+        assertEquals(assembled.getExpectedInsertions(), 10000);
+
+        // Round trip of the assembled filter
+        BloomFilter bf = BloomFilter.newInstance(assembled.serialize());
+        assertTrue(bf.mightContain(Slices.utf8Slice("key-1")));
+        assertFalse(bf.mightContain(Slices.utf8Slice("not-in-here")));
+    }
+}
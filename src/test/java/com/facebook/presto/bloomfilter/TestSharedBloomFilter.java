@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import com.facebook.presto.spi.PrestoException;
+import com.facebook.presto.spi.function.GroupedAccumulatorState;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestSharedBloomFilter
+{
+    private static final int DRIVERS = 8;
+    private static final int KEYS = 10000;
+    private static final String TASK = "20260101_000000_00001_abcde.1.0";
+
+    @Test
+    public void testConcurrentInserts()
+            throws Exception
+    {
+        List<SharedBloomFilter> filters = new ArrayList<>();
+        for (int i = 0; i < DRIVERS; i++) {
+            filters.add(acquire(TASK, "testConcurrentInserts", KEYS * DRIVERS, 0.01));
+        }
+        assertEquals(filters.get(0), filters.get(DRIVERS - 1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(DRIVERS);
+        try {
+            List<Future<BloomFilter>> released = new ArrayList<>();
+            for (int i = 0; i < DRIVERS; i++) {
+                int driver = i;
+                released.add(executor.submit(() -> {
+                    SharedBloomFilter shared = filters.get(driver);
+                    for (int key = 0; key < KEYS; key++) {
+                        shared.put(utf8Slice(driver + ":" + key));
+                    }
+                    return shared.release();
+                }));
+            }
+
+            // Exactly one driver gets the filter, with the inserts of all drivers
+            BloomFilter bf = null;
+            for (Future<BloomFilter> future : released) {
+                BloomFilter result = future.get();
+                if (result != null) {
+                    assertNull(bf);
+                    bf = result;
+                }
+            }
+            assertNotNull(bf);
+            for (int driver = 0; driver < DRIVERS; driver++) {
+                for (int key = 0; key < KEYS; key++) {
+                    assertTrue(bf.mightContain(utf8Slice(driver + ":" + key)));
+                }
+            }
+
+            // The copy has the same content hash as a filter built with plain puts
+            BloomFilter expected = BloomFilter.newInstance(KEYS * DRIVERS, 0.01);
+            for (int driver = 0; driver < DRIVERS; driver++) {
+                for (int key = 0; key < KEYS; key++) {
+                    expected.put(utf8Slice(driver + ":" + key));
+                }
+            }
+            assertEquals(bf.serialize(), expected.serialize());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReleaseRemovesFilter()
+    {
+        SharedBloomFilter first = acquire(TASK, "testReleaseRemovesFilter", 100, 0.01);
+        first.put(utf8Slice("a"));
+        assertNotNull(first.release());
+
+        // A driver starting later gets a new filter
+        SharedBloomFilter second = acquire(TASK, "testReleaseRemovesFilter", 100, 0.01);
+        assertTrue(first != second);
+        assertNotNull(second.release());
+    }
+
+    @Test
+    public void testTaskScope()
+    {
+        assertEquals(SharedBloomFilter.getTask(TASK + "-12"), TASK);
+        assertEquals(SharedBloomFilter.getTask("SplitRunner-3-" + TASK + "-12"), TASK);
+        assertNull(SharedBloomFilter.getTask("main"));
+        assertNull(SharedBloomFilter.getTask("x" + TASK + "-12"));
+
+        // The same name in another task, or outside of a split runner thread, is another filter
+        SharedBloomFilter shared = acquire(TASK, "testTaskScope", 100, 0.01);
+        SharedBloomFilter otherTask = acquire("20260101_000000_00002_abcde.1.0", "testTaskScope", 200, 0.01);
+        SharedBloomFilter unscoped = SharedBloomFilter.acquire("testTaskScope", 100, 0.01);
+        assertTrue(shared != otherTask);
+        assertNotNull(unscoped.release());
+        assertNotNull(otherTask.release());
+        assertNotNull(shared.release());
+    }
+
+    @Test
+    public void testAbandonedFilter()
+            throws Exception
+    {
+        // A cancelled driver never releases its filter
+        acquire(TASK, "testAbandonedFilter", 100, 0.01).put(utf8Slice("a"));
+        for (int i = 0; i < 100 && SharedBloomFilter.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(SharedBloomFilter.size(), 0);
+    }
+
+    @Test(expectedExceptions = PrestoException.class)
+    public void testOtherParameters()
+    {
+        SharedBloomFilter shared = acquire(TASK, "testOtherParameters", 100, 0.01);
+        try {
+            acquire(TASK, "testOtherParameters", 200, 0.01);
+        }
+        finally {
+            shared.release();
+        }
+    }
+
+    @Test
+    public void testMemoryChargedOnce()
+    {
+        SharedBloomFilterStateFactory factory = new SharedBloomFilterStateFactory();
+        SharedBloomFilterState first = factory.createSingleState();
+        SharedBloomFilterState second = factory.createSingleState();
+        asDriver(TASK, () -> SharedBloomFilterAggregation.input(first, utf8Slice("a"), utf8Slice("testMemoryChargedOnce")));
+        asDriver(TASK, () -> SharedBloomFilterAggregation.input(second, utf8Slice("b"), utf8Slice("testMemoryChargedOnce")));
+        assertTrue(first.getEstimatedSize() > 0);
+        assertEquals(second.getEstimatedSize(), 0);
+
+        // The first driver keeps its charge, the last one accounts for the copy it gets
+        assertNull(SharedBloomFilterAggregation.release(first));
+        BloomFilter bf = SharedBloomFilterAggregation.release(second);
+        assertTrue(bf.mightContain(utf8Slice("a")));
+        assertTrue(bf.mightContain(utf8Slice("b")));
+        assertEquals(second.getEstimatedSize(), bf.estimatedInMemorySize());
+    }
+
+    @Test
+    public void testGroupsWithConstantName()
+    {
+        // Both drivers see both groups under one name, their group ids mean nothing to each other
+        SharedBloomFilterStateFactory factory = new SharedBloomFilterStateFactory();
+        List<SharedBloomFilterState> drivers = new ArrayList<>();
+        for (int driver = 0; driver < 2; driver++) {
+            SharedBloomFilterState state = factory.createGroupedState();
+            ((GroupedAccumulatorState) state).ensureCapacity(2);
+            for (int group = 0; group < 2; group++) {
+                ((GroupedAccumulatorState) state).setGroupId(group);
+                String element = driver + ":" + group;
+                asDriver(TASK, () -> SharedBloomFilterAggregation.input(state, utf8Slice(element), utf8Slice("testGroupsWithConstantName")));
+            }
+            drivers.add(state);
+        }
+
+        // Every group of every driver has a filter of its own
+        for (int driver = 0; driver < 2; driver++) {
+            for (int group = 0; group < 2; group++) {
+                ((GroupedAccumulatorState) drivers.get(driver)).setGroupId(group);
+                BloomFilter bf = SharedBloomFilterAggregation.release(drivers.get(driver));
+                assertNotNull(bf);
+                for (int otherDriver = 0; otherDriver < 2; otherDriver++) {
+                    for (int otherGroup = 0; otherGroup < 2; otherGroup++) {
+                        assertEquals(bf.mightContain(utf8Slice(otherDriver + ":" + otherGroup)), otherDriver == driver && otherGroup == group);
+                    }
+                }
+            }
+        }
+    }
+
+    // Acquire as a driver of the task would
+    private static SharedBloomFilter acquire(String task, String name, long expectedInsertions, double falsePositivePercentage)
+    {
+        return asDriver(task, () -> SharedBloomFilter.acquire(name, expectedInsertions, falsePositivePercentage));
+    }
+
+    private static void asDriver(String task, Runnable runnable)
+    {
+        asDriver(task, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private static <T> T asDriver(String task, Supplier<T> supplier)
+    {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        thread.setName(task + "-1");
+        try {
+            return supplier.get();
+        }
+        finally {
+            thread.setName(threadName);
+        }
+    }
+}
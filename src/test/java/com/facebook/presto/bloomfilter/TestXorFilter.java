@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.bloomfilter;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.testng.annotations.Test;
+
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestXorFilter
+{
+    @Test
+    public void testStaticFilterElementExists()
+    {
+        BloomFilter bf = new StaticFilterBuilder(0.01)
+                .put(Slices.utf8Slice("robin"))
+                .put(Slices.utf8Slice("robin"))
+                .build();
+        assertTrue(bf.isStatic());
+        assertEquals(bf.getExpectedInsertions(), 1);
+        assertTrue(bf.mightContain(Slices.utf8Slice("robin")));
+        assertFalse(bf.mightContain(Slices.utf8Slice("verlangen")));
+    }
+
+    @Test
+    public void testStaticFilterFalsePositives()
+    {
+        int insertions = 100000;
+        StaticFilterBuilder builder = new StaticFilterBuilder(0.01);
+        for (int i = 0; i < insertions; i++) {
+            builder.put(Slices.utf8Slice("in-" + i));
+        }
+        BloomFilter bf = builder.build();
+
+        // No false negatives
+        for (int i = 0; i < insertions; i++) {
+            assertTrue(bf.mightContain(Slices.utf8Slice("in-" + i)));
+        }
+
+        // Seven bit fingerprints give a false positive percentage of 1/128
+        int falsePositives = 0;
+        for (int i = 0; i < insertions; i++) {
+            if (bf.mightContain(Slices.utf8Slice(UUID.randomUUID().toString()))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < insertions * 0.01);
+
+        // Smaller than a bloom filter with the same false positive percentage
+        assertTrue(bf.estimatedInMemorySize() < BloomFilter.newInstance(insertions, 0.01).estimatedInMemorySize());
+    }
+
+    @Test
+    public void testStaticFilterSerialization()
+    {
+        StaticFilterBuilder builder = new StaticFilterBuilder(0.001);
+        builder.put(Slices.utf8Slice("robin"));
+
+        // Partial state round trip
+        StaticFilterBuilder other = StaticFilterBuilder.newInstance(builder.serialize());
+        other.put(Slices.utf8Slice("verlangen"));
+
+        // Filter round trip
+        Slice ser = other.build().serialize();
+        BloomFilter bf = BloomFilter.newInstance(ser);
+        assertTrue(bf.isStatic());
+        assertEquals(bf.getExpectedInsertions(), 2);
+        assertTrue(bf.mightContain(Slices.utf8Slice("robin")));
+        assertTrue(bf.mightContain(Slices.utf8Slice("verlangen")));
+        assertFalse(bf.mightContain(Slices.utf8Slice("not-in-here")));
+        assertEquals(BloomFilter.readHash(ser), BloomFilter.readHash(bf.serialize()));
+
+        // Base64
+        assertTrue(BloomFilter.newInstance(bf.toBase64()).mightContain(Slices.utf8Slice("robin")));
+    }
+
+    @Test
+    public void testStaticFilterEmpty()
+    {
+        BloomFilter bf = BloomFilter.newInstance(new StaticFilterBuilder(0.01).build().serialize());
+        assertEquals(bf.getExpectedInsertions(), 0);
+        assertFalse(bf.mightContain(Slices.utf8Slice("robin")));
+    }
+}